@@ -0,0 +1,156 @@
+package org.example.sellingcourese.Config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// So sánh cách ký VNPay cũ (Mac.getInstance + init mỗi lần, hex bằng String.format, sort HashMap,
+// URL-encode hai lần) với VNPaySigner. Chạy: mvn -Pbenchmark test-compile exec:exec -Djmh.include=VNPaySigner
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class VNPaySignerBenchmark {
+    private static final String SECRET = "benchmark-secret-0123456789ABCDEF";
+
+    private VNPaySigner signer;
+    private SortedMap<String, String> params;
+    private Map<String, String> unsortedParams;
+    private String hashData;
+    private String secureHash;
+
+    @Setup
+    public void setUp() {
+        signer = VNPaySigner.forKey(SECRET);
+        params = new TreeMap<>();
+        params.put("vnp_Version", "2.1.0");
+        params.put("vnp_Command", "pay");
+        params.put("vnp_TmnCode", "HEKGVVKO");
+        params.put("vnp_Amount", "19900000");
+        params.put("vnp_CurrCode", "VND");
+        params.put("vnp_TxnRef", "1234560000000042");
+        params.put("vnp_OrderInfo", "Thanh toan don hang 123456 - khoa hoc Spring Boot");
+        params.put("vnp_OrderType", "order-type");
+        params.put("vnp_Locale", "vn");
+        params.put("vnp_ReturnUrl", "http://localhost:8080/vnpay-payment");
+        params.put("vnp_IpAddr", "127.0.0.1");
+        params.put("vnp_CreateDate", "20261017120000");
+        params.put("vnp_ExpireDate", "20261017121500");
+        unsortedParams = new HashMap<>(params);
+        hashData = legacyHashData(params);
+        secureHash = signer.sign(hashData);
+    }
+
+    @Benchmark
+    public String legacySign() throws Exception {
+        return legacyHmacSHA512(SECRET, hashData);
+    }
+
+    @Benchmark
+    public String cachedSign() {
+        return signer.sign(hashData);
+    }
+
+    @Benchmark
+    public String legacyPaymentQuery() throws Exception {
+        Map<String, String> copy = new HashMap<>(unsortedParams);
+        List<String> fieldNames = new ArrayList<>(copy.keySet());
+        Collections.sort(fieldNames);
+        StringBuilder hash = new StringBuilder();
+        StringBuilder query = new StringBuilder();
+        Iterator<String> itr = fieldNames.iterator();
+        while (itr.hasNext()) {
+            String fieldName = itr.next();
+            String fieldValue = copy.get(fieldName);
+            if (fieldValue != null && fieldValue.length() > 0) {
+                hash.append(fieldName).append('=').append(URLEncoder.encode(fieldValue, StandardCharsets.US_ASCII));
+                query.append(URLEncoder.encode(fieldName, StandardCharsets.US_ASCII)).append('=')
+                        .append(URLEncoder.encode(fieldValue, StandardCharsets.US_ASCII));
+                if (itr.hasNext()) {
+                    query.append('&');
+                    hash.append('&');
+                }
+            }
+        }
+        return query + "&vnp_SecureHash=" + legacyHmacSHA512(SECRET, hash.toString());
+    }
+
+    @Benchmark
+    public String signedQuery() {
+        return signer.signedQuery(params);
+    }
+
+    @Benchmark
+    public boolean legacyVerify() throws Exception {
+        Map<String, String> fields = new HashMap<>();
+        for (Map.Entry<String, String> param : unsortedParams.entrySet()) {
+            fields.put(URLEncoder.encode(param.getKey(), StandardCharsets.US_ASCII),
+                    URLEncoder.encode(param.getValue(), StandardCharsets.US_ASCII));
+        }
+        List<String> fieldNames = new ArrayList<>(fields.keySet());
+        Collections.sort(fieldNames);
+        StringBuilder hash = new StringBuilder();
+        Iterator<String> itr = fieldNames.iterator();
+        while (itr.hasNext()) {
+            String fieldName = itr.next();
+            hash.append(fieldName).append('=').append(fields.get(fieldName));
+            if (itr.hasNext()) {
+                hash.append('&');
+            }
+        }
+        return legacyHmacSHA512(SECRET, hash.toString()).equals(secureHash);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return signer.verify(params, secureHash);
+    }
+
+    // Bản cũ của VNPayConfig.hmacSHA512
+    private static String legacyHmacSHA512(String key, String data) throws Exception {
+        Mac hmac512 = Mac.getInstance("HmacSHA512");
+        hmac512.init(new SecretKeySpec(key.getBytes(), "HmacSHA512"));
+        byte[] result = hmac512.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(2 * result.length);
+        for (byte b : result) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private static String legacyHashData(SortedMap<String, String> sorted) {
+        StringBuilder hash = new StringBuilder();
+        for (Map.Entry<String, String> param : sorted.entrySet()) {
+            if (hash.length() > 0) {
+                hash.append('&');
+            }
+            hash.append(param.getKey()).append('=').append(URLEncoder.encode(param.getValue(), StandardCharsets.US_ASCII));
+        }
+        return hash.toString();
+    }
+}
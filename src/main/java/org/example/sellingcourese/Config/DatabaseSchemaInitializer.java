@@ -0,0 +1,114 @@
+package org.example.sellingcourese.Config;
+
+import org.example.sellingcourese.Service.SalesAnalyticsService;
+import org.example.sellingcourese.repository.CourseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Các đối tượng schema mà ddl-auto=update của Hibernate không tạo được (cột tsvector, GIN index, ...).
+// Mọi câu lệnh đều idempotent nên chạy lại mỗi lần khởi động là an toàn.
+// Chạy ngay sau khi các bean được tạo, trước khi web server nhận request và trước các job @Scheduled:
+// unique index của giỏ hàng và các sequence phải sẵn sàng trước câu lệnh đầu tiên dùng tới chúng.
+@Component
+public class DatabaseSchemaInitializer implements SmartInitializingSingleton {
+    private static final Logger log = LoggerFactory.getLogger(DatabaseSchemaInitializer.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        initCourseSearch();
+        initCartConstraints();
+        initSalesRollup();
+        // orders_seq: mỗi nextval là một id (Order.allocationSize = 1)
+        jdbcTemplate.execute("ALTER SEQUENCE orders_seq INCREMENT BY 1");
+        alignSequence("orders_seq", "Orders");
+        alignSequence("order_items_seq", "Order_items");
+        // Phần duy nhất của vnp_TxnRef (VNPayService.nextTxnRef)
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS vnp_txn_ref_seq");
+    }
+
+    // Orders/Order_items chuyển từ IDENTITY sang sequence: đẩy sequence vượt MAX(id) hiện có.
+    // orders_seq cấp từng id; order_items_seq dùng pooled optimizer (nextval là cận trên của khối id).
+    // Cả hai trường hợp last_value >= MAX(id) là đủ.
+    private void alignSequence(String sequence, String table) {
+        List<Long> aligned = jdbcTemplate.queryForList("SELECT setval('" + sequence + "', t.max_id) " +
+                "FROM (SELECT MAX(id) AS max_id FROM \"" + table + "\") t " +
+                "WHERE t.max_id > (SELECT last_value FROM " + sequence + ")", Long.class);
+        if (!aligned.isEmpty()) {
+            log.info("Sequence {} moved to {}", sequence, aligned.get(0));
+        }
+    }
+
+    // Rollup chỉ tính từ giá đã chốt trên Order_items: dòng cũ chưa có giá được chốt một lần theo giá course
+    // hiện tại, để các lần rebuild sau không bị đổi theo giá course.
+    // Đơn hoàn tất trước khi có cột completed_at (hoặc được chuyển trạng thái ngoài completeOrder) lấy
+    // completed_at từ lần thanh toán thành công cuối cùng; đơn không có Payment mới dùng thời điểm migrate.
+    private void initSalesRollup() {
+        int priced = jdbcTemplate.update("UPDATE \"Order_items\" oi SET price = c.price " +
+                "FROM \"Courses\" c WHERE c.id = oi.course_id AND oi.price IS NULL");
+        int stamped = jdbcTemplate.update("UPDATE \"Orders\" o SET completed_at = COALESCE(" +
+                "(SELECT MAX(p.\"paymentDate\") FROM \"Payments\" p WHERE p.order_id = o.id AND p.status <> 'FAILED'), " +
+                "now()) WHERE o.status_id = 3 AND o.completed_at IS NULL");
+        if (priced + stamped > 0) {
+            log.info("Froze price on {} order items and stamped completed_at on {} completed orders, " +
+                    "rebuilding sales rollup", priced, stamped);
+            salesAnalyticsService.rebuildAll();
+        }
+    }
+
+    // Full-text search cho Courses: cột search_vector + GIN index, backfill các dòng chưa có vector
+    private void initCourseSearch() {
+        jdbcTemplate.execute("ALTER TABLE \"Courses\" ADD COLUMN IF NOT EXISTS search_vector tsvector");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_courses_search_vector ON \"Courses\" USING GIN (search_vector)");
+        int backfilled = jdbcTemplate.update("UPDATE \"Courses\" c SET search_vector = "
+                + CourseRepository.SEARCH_VECTOR_EXPR + " WHERE c.search_vector IS NULL");
+        if (backfilled > 0) {
+            log.info("Backfilled search_vector for {} courses", backfilled);
+        }
+    }
+
+    // Mỗi user một cart, mỗi course một dòng trong cart: cần cho upsert ON CONFLICT khi thêm vào giỏ.
+    // Dữ liệu cũ có thể bị trùng nên gộp lại trước khi tạo unique index (chỉ chạy một lần).
+    private void initCartConstraints() {
+        if (indexExists("uk_carts_user_id") && indexExists("uk_cart_details_cart_course")) {
+            return;
+        }
+        // Chuyển các dòng của cart trùng sang cart cũ nhất của user, rồi xóa cart trùng
+        int movedLines = jdbcTemplate.update("UPDATE \"CartDetails\" d SET \"CartID\" = k.keep_id " +
+                "FROM (SELECT \"CartID\", MIN(\"CartID\") OVER (PARTITION BY \"UserID\") AS keep_id FROM \"Carts\") k " +
+                "WHERE d.\"CartID\" = k.\"CartID\" AND k.\"CartID\" <> k.keep_id");
+        int removedCarts = jdbcTemplate.update("DELETE FROM \"Carts\" c WHERE EXISTS (" +
+                "SELECT 1 FROM \"Carts\" o WHERE o.\"UserID\" = c.\"UserID\" AND o.\"CartID\" < c.\"CartID\")");
+        // Gộp số lượng các dòng trùng course vào dòng cũ nhất
+        jdbcTemplate.update("UPDATE \"CartDetails\" d SET \"Quantity\" = s.total " +
+                "FROM (SELECT MIN(\"CartDetailID\") AS keep_id, SUM(\"Quantity\") AS total FROM \"CartDetails\" " +
+                "GROUP BY \"CartID\", \"CourseID\" HAVING COUNT(*) > 1) s " +
+                "WHERE d.\"CartDetailID\" = s.keep_id");
+        int removedLines = jdbcTemplate.update("DELETE FROM \"CartDetails\" d WHERE EXISTS (" +
+                "SELECT 1 FROM \"CartDetails\" o WHERE o.\"CartID\" = d.\"CartID\" " +
+                "AND o.\"CourseID\" = d.\"CourseID\" AND o.\"CartDetailID\" < d.\"CartDetailID\")");
+        if (movedLines + removedCarts + removedLines > 0) {
+            log.info("Merged duplicate carts: {} lines moved, {} carts and {} lines removed",
+                    movedLines, removedCarts, removedLines);
+        }
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS uk_carts_user_id ON \"Carts\" (\"UserID\")");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS uk_cart_details_cart_course " +
+                "ON \"CartDetails\" (\"CartID\", \"CourseID\")");
+    }
+
+    private boolean indexExists(String indexName) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, indexName));
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.sellingcourese.Config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Bật các job @Scheduled (flush giỏ hàng, ...)
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
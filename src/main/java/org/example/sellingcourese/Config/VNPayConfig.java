@@ -3,10 +3,7 @@ package org.example.sellingcourese.Config;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
@@ -24,11 +21,7 @@ public class VNPayConfig {
         try {
             MessageDigest md = MessageDigest.getInstance("MD5");
             byte[] hash = md.digest(message.getBytes("UTF-8"));
-            StringBuilder sb = new StringBuilder(2 * hash.length);
-            for (byte b : hash) {
-                sb.append(String.format("%02x", b & 0xff));
-            }
-            digest = sb.toString();
+            digest = VNPaySigner.toHex(hash);
         } catch (UnsupportedEncodingException ex) {
             digest = "";
         } catch (NoSuchAlgorithmException ex) {
@@ -42,11 +35,7 @@ public class VNPayConfig {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
             byte[] hash = md.digest(message.getBytes("UTF-8"));
-            StringBuilder sb = new StringBuilder(2 * hash.length);
-            for (byte b : hash) {
-                sb.append(String.format("%02x", b & 0xff));
-            }
-            digest = sb.toString();
+            digest = VNPaySigner.toHex(hash);
         } catch (UnsupportedEncodingException ex) {
             digest = "";
         } catch (NoSuchAlgorithmException ex) {
@@ -56,16 +45,15 @@ public class VNPayConfig {
     }
 
     //Util for VNPAY
-    public static String hashAllFields(Map fields) {
-        List fieldNames = new ArrayList(fields.keySet());
-        Collections.sort(fieldNames);
+    public static String hashAllFields(Map<String, String> fields) {
+        SortedMap<String, String> sorted = new TreeMap<>(fields);
         StringBuilder sb = new StringBuilder();
-        Iterator itr = fieldNames.iterator();
+        Iterator<Map.Entry<String, String>> itr = sorted.entrySet().iterator();
         while (itr.hasNext()) {
-            String fieldName = (String) itr.next();
-            String fieldValue = (String) fields.get(fieldName);
+            Map.Entry<String, String> field = itr.next();
+            String fieldValue = field.getValue();
             if ((fieldValue != null) && (fieldValue.length() > 0)) {
-                sb.append(fieldName);
+                sb.append(field.getKey());
                 sb.append("=");
                 sb.append(fieldValue);
             }
@@ -76,24 +64,13 @@ public class VNPayConfig {
         return hmacSHA512(vnp_HashSecret,sb.toString());
     }
 
+    // Giữ API cũ; Mac được cache theo key trong VNPaySigner
     public static String hmacSHA512(final String key, final String data) {
         try {
-
             if (key == null || data == null) {
                 throw new NullPointerException();
             }
-            final Mac hmac512 = Mac.getInstance("HmacSHA512");
-            byte[] hmacKeyBytes = key.getBytes();
-            final SecretKeySpec secretKey = new SecretKeySpec(hmacKeyBytes, "HmacSHA512");
-            hmac512.init(secretKey);
-            byte[] dataBytes = data.getBytes(StandardCharsets.UTF_8);
-            byte[] result = hmac512.doFinal(dataBytes);
-            StringBuilder sb = new StringBuilder(2 * result.length);
-            for (byte b : result) {
-                sb.append(String.format("%02x", b & 0xff));
-            }
-            return sb.toString();
-
+            return VNPaySigner.forKey(key).sign(data);
         } catch (Exception ex) {
             return "";
         }
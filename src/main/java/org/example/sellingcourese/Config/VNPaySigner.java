@@ -0,0 +1,114 @@
+package org.example.sellingcourese.Config;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Ký / kiểm tra tham số VNPay (HmacSHA512). Mỗi thread giữ một Mac đã init với key, không tạo lại
+// Mac / SecretKeySpec cho mỗi lần ký; hex encode bằng bảng tra thay cho String.format từng byte.
+public final class VNPaySigner {
+    private static final String ALGORITHM = "HmacSHA512";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final Map<String, VNPaySigner> SIGNERS = new ConcurrentHashMap<>();
+
+    private final SecretKeySpec keySpec;
+    private final ThreadLocal<Mac> macs;
+
+    private VNPaySigner(String secret) {
+        this.keySpec = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    // Một signer cho mỗi secret (thực tế chỉ có vnp_HashSecret)
+    public static VNPaySigner forKey(String secret) {
+        if (secret == null) {
+            throw new NullPointerException("secret");
+        }
+        return SIGNERS.computeIfAbsent(secret, VNPaySigner::new);
+    }
+
+    public String sign(String data) {
+        // doFinal tự reset Mac nên dùng lại được cho lần ký sau
+        return toHex(macs.get().doFinal(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Query đã ký cho URL thanh toán: duyệt params (đã sắp xếp) một lần, mỗi giá trị chỉ URL-encode một lần
+    // và dùng chung cho chuỗi ký lẫn query string
+    public String signedQuery(SortedMap<String, String> params) {
+        StringBuilder hashData = new StringBuilder(512);
+        StringBuilder query = new StringBuilder(640);
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            String value = param.getValue();
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            String encodedValue = encode(value);
+            if (hashData.length() > 0) {
+                hashData.append('&');
+                query.append('&');
+            }
+            hashData.append(param.getKey()).append('=').append(encodedValue);
+            query.append(encode(param.getKey())).append('=').append(encodedValue);
+        }
+        return query.append("&vnp_SecureHash=").append(sign(hashData.toString())).toString();
+    }
+
+    // Kiểm tra chữ ký của callback: fields là tham số gốc (chưa encode), không gồm vnp_SecureHash / vnp_SecureHashType
+    public boolean verify(SortedMap<String, String> fields, String secureHash) {
+        if (secureHash == null) {
+            return false;
+        }
+        StringBuilder hashData = new StringBuilder(512);
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            String value = field.getValue();
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            if (hashData.length() > 0) {
+                hashData.append('&');
+            }
+            hashData.append(encode(field.getKey())).append('=').append(encode(value));
+        }
+        return matches(hashData.toString(), secureHash);
+    }
+
+    // So sánh thời gian hằng để không lộ chữ ký qua thời gian phản hồi
+    public boolean matches(String data, String secureHash) {
+        if (secureHash == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(sign(data).getBytes(StandardCharsets.US_ASCII),
+                secureHash.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int value = bytes[i] & 0xff;
+            chars[i * 2] = HEX[value >>> 4];
+            chars[i * 2 + 1] = HEX[value & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.US_ASCII);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(keySpec);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA512 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.sellingcourese.Controller;
+
+import org.example.sellingcourese.Request.CourseSalesDTO;
+import org.example.sellingcourese.Request.DailySalesDTO;
+import org.example.sellingcourese.Request.TeacherSalesDTO;
+import org.example.sellingcourese.Service.SalesAnalyticsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Dashboard doanh thu, ví dụ /public/analytics/sales/courses?from=2024-01-01&to=2024-01-31&limit=10
+@RestController
+@CrossOrigin(origins = "http://localhost:3000")
+@RequestMapping("/public/analytics/sales")
+public class AnalyticsController {
+
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
+
+    @GetMapping("/daily")
+    public ResponseEntity<List<DailySalesDTO>> getDailySales(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(salesAnalyticsService.getDailySales(from, to));
+    }
+
+    @GetMapping("/courses")
+    public ResponseEntity<List<CourseSalesDTO>> getTopCourses(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(salesAnalyticsService.getTopCourses(from, to, limit));
+    }
+
+    @GetMapping("/teachers")
+    public ResponseEntity<List<TeacherSalesDTO>> getTopTeachers(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(salesAnalyticsService.getTopTeachers(from, to, limit));
+    }
+}
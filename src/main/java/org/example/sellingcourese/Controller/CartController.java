@@ -92,7 +92,9 @@ package org.example.sellingcourese.Controller;
 
 import org.example.sellingcourese.Model.Cart;
 import org.example.sellingcourese.Model.CartDetail;
+import org.example.sellingcourese.Request.CartBatchRequest;
 import org.example.sellingcourese.Request.CartDTO;
+import org.example.sellingcourese.Request.CartSummaryDTO;
 import org.example.sellingcourese.Service.CartService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -143,17 +145,22 @@ public ResponseEntity<Map<String, Object>> saveCartWithDetails(@RequestBody Cart
     return ResponseEntity.ok(response); // Trả về HTTP 200 nếu thành công
 }
 
-    // Cập nhật thông tin Cart kèm các CartDetail
+    // Thay toàn bộ CartDetail của Cart (body là danh sách dòng giỏ hàng)
     @PutMapping("/{id}")
     public ResponseEntity<Cart> updateCartWithDetails(
             @PathVariable Long id,
-            @RequestBody Cart updatedCart,
             @RequestBody List<CartDetail> updatedDetails
     ) {
-        Cart updatedCartResponse = cartService.updateCartWithDetails(id, updatedCart, updatedDetails);
+        Cart updatedCartResponse = cartService.updateCartWithDetails(id, updatedDetails);
         return ResponseEntity.ok(updatedCartResponse);
     }
 
+    // Nhiều thao tác ADD / REMOVE / SET_QUANTITY trong một request (ví dụ chuyển wishlist vào giỏ)
+    @PostMapping("/user/{userID}/batch")
+    public ResponseEntity<CartSummaryDTO> applyBatch(@PathVariable Long userID, @RequestBody CartBatchRequest request) {
+        return ResponseEntity.ok(cartService.applyBatch(userID, request));
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<String> deleteCartnew(@PathVariable Long id) {
         cartService.deleteCartNews(id);
@@ -50,10 +50,11 @@
 
 package org.example.sellingcourese.Controller;
 
-import org.example.sellingcourese.Model.Order;
-import org.example.sellingcourese.Service.OrderService;
+import org.example.sellingcourese.Request.VNPayCallback;
+import org.example.sellingcourese.Service.PaymentInboxService;
 import org.example.sellingcourese.Service.VNPayService;
-import org.example.sellingcourese.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Controller;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -62,18 +63,17 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
 import java.util.Map;
-import java.util.Optional;
 
 @RestController
 @CrossOrigin(origins = "http://localhost:3000")
 public class CheckoutVNpayController {
     @Autowired
     private VNPayService vnPayService;
- @Autowired
- private OrderRepository orderRepository;
+    @Autowired
+    private PaymentInboxService paymentInboxService;
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckoutVNpayController.class);
     @PostMapping("/submitOrder")
     public String submitOrder(@RequestBody Map<String, Object> payload, HttpServletRequest request) {
         int orderTotal = (int) payload.get("amount");
@@ -95,35 +95,16 @@ public class CheckoutVNpayController {
 //            response.sendRedirect("http://localhost:3000/orderfail"); // Chuyển hướng về trang thất bại nếu thanh toán không thành công
 //        }
 //    }
+// Trình duyệt quay về từ VNPay: chỉ kiểm tra chữ ký và ghi vào payment_inbox, đơn hàng được cập nhật ở background
 @GetMapping("/vnpay-payment")
 public void getMapping(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    int paymentStatus = vnPayService.orderReturn(request);
-
-    // Kiểm tra trạng thái thanh toán
-    if (paymentStatus == 1) {
-        // Lấy Order ID từ tham số vnp_OrderInfo
-        String vnpOrderInfo = request.getParameter("vnp_OrderInfo");
-        if (vnpOrderInfo != null) {
-            try {
-                // Giải mã và lấy Order ID
-                String decodedOrderInfo = URLDecoder.decode(vnpOrderInfo, StandardCharsets.UTF_8.name());
-                String[] parts = decodedOrderInfo.split(":");
-                if (parts.length > 1) {
-                    Long orderId = Long.parseLong(parts[1].trim()); // Lấy giá trị ID
-                    // Cập nhật trạng thái đơn hàng
-                    Optional<Order> orderOptional = orderRepository.findById(orderId);
-                    if (orderOptional.isPresent()) {
-                        Order order = orderOptional.get();
-                        order.setStatusId(3L);  // Cập nhật trạng thái là "Complete" (3)
-                        orderRepository.save(order);  // Lưu lại cập nhật
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                response.sendRedirect("http://localhost:3000/orderfail");
-                return;
-            }
-        }
+    VNPayCallback callback = vnPayService.parseCallback(request);
+    if (callback == null) {
+        response.sendRedirect("http://localhost:3000/orderfail");
+        return;
+    }
+    paymentInboxService.receive(callback, "RETURN");
+    if (callback.isSuccessful()) {
         // Chuyển hướng về trang chủ sau khi thanh toán thành công
         response.sendRedirect("http://localhost:3000/home");
     } else {
@@ -132,5 +113,19 @@ public void getMapping(HttpServletRequest request, HttpServletResponse response)
     }
 }
 
+    // IPN: VNPay gọi server-to-server, cần trả RspCode để VNPay ngừng gửi lại
+    @GetMapping("/vnpay-ipn")
+    public Map<String, String> ipn(HttpServletRequest request) {
+        try {
+            VNPayCallback callback = vnPayService.parseCallback(request);
+            if (callback == null) {
+                return Map.of("RspCode", "97", "Message", "Invalid Checksum");
+            }
+            return paymentInboxService.acknowledgeIpn(callback);
+        } catch (RuntimeException e) {
+            logger.error("VNPay IPN could not be recorded: {}", e.getMessage(), e);
+            return Map.of("RspCode", "99", "Message", "Unknown error");
+        }
+    }
 
 }
\ No newline at end of file
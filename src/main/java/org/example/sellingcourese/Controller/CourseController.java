@@ -1,8 +1,18 @@
 
 package org.example.sellingcourese.Controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.example.sellingcourese.Model.Course;
+import org.example.sellingcourese.Model.MediaStatus;
+import org.example.sellingcourese.Request.CoursePageResponse;
+import org.example.sellingcourese.Request.CourseSearchResult;
+import org.example.sellingcourese.Service.CourseCatalogService;
+import org.example.sellingcourese.Service.CourseSearchService;
 import org.example.sellingcourese.Service.CourseService;
+import org.example.sellingcourese.storage.MediaFile;
+import org.example.sellingcourese.storage.MediaFileSender;
+import org.example.sellingcourese.storage.MediaStorage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +30,7 @@ import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @CrossOrigin("https://course-ui.vercel.app")
@@ -28,6 +39,14 @@ public class CourseController {
     private static final Logger log = LoggerFactory.getLogger(CourseController.class);
     @Autowired
     private CourseService courseService;
+    @Autowired
+    private CourseCatalogService courseCatalogService;
+    @Autowired
+    private CourseSearchService courseSearchService;
+    @Autowired
+    private MediaStorage mediaStorage;
+    @Autowired
+    private MediaFileSender mediaFileSender;
 
     // Get all courses
     @GetMapping
@@ -35,6 +54,16 @@ public class CourseController {
         return courseService.getAllCourses();
     }
 
+    // Catalog phân trang theo keyset: sort = id | price | title, cursor lấy từ nextCursor của trang trước
+    @GetMapping("/page")
+    public ResponseEntity<CoursePageResponse> getCatalogPage(
+            @RequestParam(value = "sort", defaultValue = "id") String sort,
+            @RequestParam(value = "status", required = false) Integer status,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size) {
+        return ResponseEntity.ok(courseCatalogService.getCatalogPage(sort, status, cursor, size));
+    }
+
     @PostMapping(consumes = {"multipart/form-data"})
     public ResponseEntity<?> addCourse(
             @RequestParam("title") String title,
@@ -139,6 +168,48 @@ public class CourseController {
         return courseService.findCoursesByTitle(title);
     }
 
+    // Full-text search có xếp hạng (title, description, category), hỗ trợ tìm theo tiền tố cho typeahead
+    @GetMapping("/search/ranked")
+    public ResponseEntity<List<CourseSearchResult>> searchCourses(
+            @RequestParam("q") String keyword,
+            @RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
+            @RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice,
+            @RequestParam(value = "status", required = false) Integer status,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        return ResponseEntity.ok(courseSearchService.search(keyword, minPrice, maxPrice, status, limit));
+    }
+
+
+    // Trạng thái job xử lý media, client poll sau khi tạo/cập nhật course
+    @GetMapping("/{id}/media-status")
+    public ResponseEntity<Map<String, Object>> getMediaStatus(@PathVariable Long id) {
+        Course course = courseService.getCourseById(id);
+        Map<String, Object> response = new HashMap<>();
+        response.put("courseId", course.getId());
+        response.put("mediaStatus", course.getMediaStatus() != null ? course.getMediaStatus() : MediaStatus.READY);
+        response.put("mediaError", course.getMediaError());
+        response.put("thumbnailUrl", course.getThumbnailUrl());
+        response.put("videoUrl", course.getVideoUrl());
+        response.put("hlsUrl", course.getHlsUrl());
+        return ResponseEntity.ok(response);
+    }
+
+    // Stream video của course, hỗ trợ Range/206 để tua; video chưa nằm trên storage cục bộ thì redirect tới videoUrl
+    @GetMapping("/{id}/video")
+    public void streamVideo(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Course course = courseService.getCourseById(id);
+        Optional<MediaFile> videoFile = course.getVideoKey() != null
+                ? mediaStorage.open(course.getVideoKey())
+                : Optional.empty();
+        if (videoFile.isPresent()) {
+            // Video của course có thể được thay, nên client phải kiểm tra lại bằng ETag
+            mediaFileSender.send(videoFile.get(), "public, no-cache", request, response);
+        } else if (course.getVideoUrl() != null) {
+            response.sendRedirect(course.getVideoUrl());
+        } else {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
 
     @PutMapping("/{id}/status")
     public ResponseEntity<Course> updateCourseStatus(@PathVariable Long id) {
@@ -0,0 +1,43 @@
+package org.example.sellingcourese.Controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.sellingcourese.storage.MediaFile;
+import org.example.sellingcourese.storage.MediaFileSender;
+import org.example.sellingcourese.storage.MediaStorage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Optional;
+
+// Phục vụ media lưu trên đĩa (media.storage.type=local), ví dụ /public/media/courses/1/video/intro.mp4
+@RestController
+@CrossOrigin(origins = "http://localhost:3000")
+@RequestMapping("/public/media")
+public class MediaController {
+
+    @Autowired
+    private MediaStorage mediaStorage;
+
+    @Autowired
+    private MediaFileSender mediaFileSender;
+
+    @GetMapping("/{*key}")
+    public void getMedia(@PathVariable String key, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String storageKey = key.startsWith("/") ? key.substring(1) : key;
+        Optional<MediaFile> mediaFile;
+        try {
+            mediaFile = mediaStorage.open(storageKey);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (mediaFile.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        // Key chứa UUID nên nội dung không bao giờ đổi, cho phép cache lâu dài
+        mediaFileSender.send(mediaFile.get(), "public, max-age=31536000, immutable", request, response);
+    }
+}
@@ -5,16 +5,21 @@ import org.example.sellingcourese.Model.Order;
 import org.example.sellingcourese.Model.OrderItem;
 import org.example.sellingcourese.Request.OrderDTO;
 import org.example.sellingcourese.Request.OrderDetailsResponse;
+import org.example.sellingcourese.Request.OrderHistoryPage;
+import org.example.sellingcourese.Service.OrderExportService;
+import org.example.sellingcourese.Service.OrderExportService.ExportFormat;
 import org.example.sellingcourese.Service.OrderService;
 import org.example.sellingcourese.Service.OrderItemService;
 import org.example.sellingcourese.repository.OrderRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -30,12 +35,38 @@ public class OrderController {
     private OrderItemService orderItemService;
     @Autowired
     private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderExportService orderExportService;
     // Get all orders
     @GetMapping
     public List<Order> getAllOrders() {
         return orderService.getAllOrders();
     }
     // Endpoint để lấy danh sách đơn hàng hoàn tất
+    // Export cho đối soát, ghi dần từng dòng: /public/orders/export?format=csv&statusId=3 (mặc định NDJSON)
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportOrders(@RequestParam(required = false) String format,
+                                                              @RequestParam(required = false) Long statusId) {
+        ExportFormat exportFormat = ExportFormat.from(format);
+        return exportResponse("orders", exportFormat, orderExportService.exportOrders(statusId, exportFormat));
+    }
+
+    @GetMapping("/items/export")
+    public ResponseEntity<StreamingResponseBody> exportOrderItems(@RequestParam(required = false) String format) {
+        ExportFormat exportFormat = ExportFormat.from(format);
+        return exportResponse("order-items", exportFormat, orderExportService.exportOrderItems(exportFormat));
+    }
+
+    private ResponseEntity<StreamingResponseBody> exportResponse(String name, ExportFormat format,
+                                                                 StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + name + "." + format.getExtension() + "\"")
+                .body(body);
+    }
+
     @GetMapping("/completed")
     public ResponseEntity<List<Order>> getCompletedOrders() {
         List<Order> completedOrders = orderService.getCompletedOrders();
@@ -49,11 +80,19 @@ public class OrderController {
 
     // Add a new order
     @PostMapping
-    public ResponseEntity<Order> createOrder(@RequestBody OrderDTO orderDTO) {
-        Order savedOrder = orderService.createOrder(orderDTO);
+    public ResponseEntity<Order> createOrder(@RequestBody OrderDTO orderDTO,
+                                             @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        Order savedOrder = orderService.createOrder(orderDTO, idempotencyKey);
         return ResponseEntity.ok(savedOrder);
     }
 
+    // Đặt hàng toàn bộ giỏ hàng hiện tại của user, giỏ hàng được xóa trong cùng transaction
+    @PostMapping("/user/{userId}/checkout")
+    public ResponseEntity<Order> checkout(@PathVariable Long userId,
+                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return ResponseEntity.ok(orderService.checkout(userId, idempotencyKey));
+    }
+
     // Update an order
     @PutMapping("/{id}")
     public ResponseEntity<Order> updateOrder(@PathVariable Long id, @RequestBody Order orderDetails) {
@@ -139,6 +178,21 @@ public class OrderController {
         List<OrderDetailsResponse> orderDetailsResponses = orderService.getOrdersByUserId(userId);
         return ResponseEntity.ok(orderDetailsResponses);
     }
+    // Lịch sử mua theo trang: /public/orders/user/5/history?size=20&cursor=<nextCursor của trang trước>
+    @GetMapping("/user/{userId}/history")
+    public ResponseEntity<OrderHistoryPage> getOrderHistory(@PathVariable Long userId,
+                                                            @RequestParam(required = false) String cursor,
+                                                            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(orderService.getOrderHistory(userId, cursor, size));
+    }
+
+    // Ví dụ /public/orders/user/5/owned-courses?courseIds=1,2,3 -> [2]
+    @GetMapping("/user/{userId}/owned-courses")
+    public ResponseEntity<List<Long>> getOwnedCourseIds(@PathVariable Long userId,
+                                                        @RequestParam("courseIds") List<Long> courseIds) {
+        return ResponseEntity.ok(orderService.getOwnedCourseIds(userId, courseIds));
+    }
+
     @GetMapping("/status/3/{userId}")
     public ResponseEntity<List<OrderDetailsResponse>> getOrdersByUserIdAndStatus(@PathVariable Long userId) {
         List<OrderDetailsResponse> orderDetailsResponses = orderService.getOrdersByUserIdAndStatus(userId, 3L);
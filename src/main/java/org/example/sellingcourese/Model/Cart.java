@@ -13,7 +13,9 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "Carts")
+@Table(name = "Carts", indexes = {
+        @Index(name = "idx_carts_created_date", columnList = "CreatedDate")
+})
 public class Cart {
 
     @Id
@@ -12,7 +12,9 @@ import java.math.BigDecimal;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "CartDetails")
+@Table(name = "CartDetails", indexes = {
+        @Index(name = "idx_cart_details_course_id", columnList = "CourseID")
+})
 public class CartDetail {
 
     @Id
@@ -6,16 +6,24 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Data
 @Entity
+// Chỉ UPDATE các cột thay đổi để không ghi đè URL media do worker background cập nhật
+@DynamicUpdate
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "Courses")
+@Table(name = "Courses", indexes = {
+        @Index(name = "idx_courses_status_id", columnList = "status, id"),
+        @Index(name = "idx_courses_price_id", columnList = "price, id"),
+        @Index(name = "idx_courses_title_id", columnList = "title, id")
+})
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Course {
 
@@ -58,11 +66,39 @@ public class Course {
     @Column(name = "video_url")
     private String videoUrl; // Đường dẫn tới video
 
+    // Key của file trong MediaStorage (null với media cũ chỉ có URL Drive)
+    @Column(name = "thumbnail_storage_key")
+    private String thumbnailKey;
+
+    @Column(name = "video_storage_key")
+    private String videoKey;
+
+    // Master playlist HLS (null khi chưa cắt segment hoặc server không có ffmpeg)
+    @Column(name = "hls_url")
+    private String hlsUrl;
+
     @Column(name = "status", nullable = true)
     private Integer status ; // 1: Chờ xử lý, 0: Đã duyệt, 2: đã bị hủy
 
     @Column(name = "cancel_reason", columnDefinition = "text", nullable = true)
     private String cancelReason; // Lý do hủy
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "media_status", length = 20)
+    private MediaStatus mediaStatus; // null với các course cũ (coi như READY)
+
+    @Column(name = "media_error", columnDefinition = "text")
+    private String mediaError;
+
+    // Thời điểm job media hiện tại được nhận; job PROCESSING quá lâu là job đã mất khi server tắt/crash
+    @JsonIgnore
+    @Column(name = "media_requested_at")
+    private LocalDateTime mediaRequestedAt;
+
+    // Tombstone: course đang bị xóa (dữ liệu liên quan được xóa theo lô), không thêm vào giỏ/đơn được nữa
+    @JsonIgnore
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
 }
 
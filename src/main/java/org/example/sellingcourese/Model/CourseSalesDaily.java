@@ -0,0 +1,42 @@
+package org.example.sellingcourese.Model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Doanh thu và số lượng bán theo ngày cho từng course (rollup từ đơn hàng đã hoàn tất).
+// Được cộng dồn khi đơn hàng chuyển sang trạng thái 3, dashboard chỉ đọc bảng này.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "course_sales_daily",
+        uniqueConstraints = @UniqueConstraint(name = "uk_course_sales_daily_date_course",
+                columnNames = {"sales_date", "course_id"}),
+        indexes = @Index(name = "idx_course_sales_daily_teacher_date", columnList = "teacher_id, sales_date"))
+public class CourseSalesDaily {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sales_date", nullable = false)
+    private LocalDate salesDate;
+
+    @Column(name = "course_id", nullable = false)
+    private Long courseId;
+
+    // teacher_id tại thời điểm bán
+    @Column(name = "teacher_id", nullable = false)
+    private Long teacherId;
+
+    @Column(name = "units_sold", nullable = false)
+    private Long unitsSold;
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal revenue;
+}
@@ -0,0 +1,8 @@
+package org.example.sellingcourese.Model;
+
+// Trạng thái xử lý media (thumbnail, video) của course
+public enum MediaStatus {
+    PROCESSING, // Đang upload ở background
+    READY,      // Đã upload xong
+    FAILED      // Upload thất bại sau khi đã retry
+}
@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -14,11 +15,21 @@ import java.util.Set;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "Orders")
+@Table(name = "Orders", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_orders_user_idempotency_key", columnNames = {"user_id", "idempotency_key"})
+}, indexes = {
+        @Index(name = "idx_orders_user_id", columnList = "user_id, id"),
+        @Index(name = "idx_orders_completed_at", columnList = "completed_at"),
+        @Index(name = "idx_orders_status_vnp_requested_at", columnList = "status_id, vnp_requested_at")
+})
 public class Order {
 
+    // Id lấy từ orders_seq, mỗi nextval đúng một id: OrderRepository.insertIfAbsent gọi nextval trực tiếp nên không
+    // dùng pooled optimizer (khối id của Hibernate sẽ trùng với id do câu lệnh native lấy).
+    // Giá trị khởi đầu do DatabaseSchemaInitializer căn lại
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 1)
     private Long id;
 
     // Cột user_id để lưu ID người dùng
@@ -44,6 +55,32 @@ public class Order {
     @JoinColumn(name = "status_id", insertable = false, updatable = false)
     private Status status;
 
+    // Thời điểm chuyển sang trạng thái 3 (Complete), dùng cho rollup doanh thu theo ngày
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    // Khóa do client gửi kèm khi đặt hàng; gửi lại cùng khóa trả về đơn đã tạo thay vì tạo đơn mới
+    @JsonIgnore
+    @Column(name = "idempotency_key", length = 100)
+    private String idempotencyKey;
+
+    // Lần tạo URL thanh toán VNPay gần nhất: cần vnp_TxnRef + vnp_CreateDate để đối soát bằng API querydr
+    @JsonIgnore
+    @Column(name = "vnp_txn_ref", length = 100)
+    private String vnpTxnRef;
+
+    @JsonIgnore
+    @Column(name = "vnp_create_date", length = 14)
+    private String vnpCreateDate;
+
+    @JsonIgnore
+    @Column(name = "vnp_requested_at")
+    private LocalDateTime vnpRequestedAt;
+
+    @JsonIgnore
+    @Column(name = "last_reconciled_at")
+    private LocalDateTime lastReconciledAt;
+
     // Quan hệ với OrderItem
     @JsonIgnore
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
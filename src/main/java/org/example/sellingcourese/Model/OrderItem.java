@@ -6,15 +6,21 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.math.BigDecimal;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "Order_items")
+@Table(name = "Order_items", indexes = {
+        @Index(name = "idx_order_items_order_course", columnList = "order_id, course_id"),
+        @Index(name = "idx_order_items_course_id", columnList = "course_id")
+})
 public class OrderItem {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_items_seq")
+    @SequenceGenerator(name = "order_items_seq", sequenceName = "order_items_seq", allocationSize = 50)
     private Long id;
 
     // Cột order_id để lưu ID đơn hàng
@@ -40,5 +46,9 @@ public class OrderItem {
     @Column(nullable = false)
     private int quantity;
 
+    // Đơn giá tại thời điểm đặt hàng (null với các dòng tạo trước khi có cột này)
+    @Column(precision = 10, scale = 2)
+    private BigDecimal price;
+
 
 }
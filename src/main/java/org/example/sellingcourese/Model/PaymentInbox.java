@@ -0,0 +1,71 @@
+package org.example.sellingcourese.Model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Callback (return URL) và IPN của VNPay đã xác thực chữ ký, mỗi vnp_TxnRef một dòng.
+// Request chỉ ghi vào đây; PaymentInboxService áp dụng vào đơn hàng ở background.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "payment_inbox",
+        uniqueConstraints = @UniqueConstraint(name = "uk_payment_inbox_txn_ref", columnNames = "txn_ref"),
+        indexes = @Index(name = "idx_payment_inbox_status_next", columnList = "status, next_attempt_at"))
+public class PaymentInbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "txn_ref", nullable = false, length = 100)
+    private String txnRef;
+
+    // null nếu không đọc được order id từ vnp_OrderInfo
+    @Column(name = "order_id")
+    private Long orderId;
+
+    // RETURN (trình duyệt quay về) hoặc IPN (VNPay gọi server-to-server)
+    @Column(nullable = false, length = 20)
+    private String source;
+
+    @Column(precision = 14, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "response_code", length = 10)
+    private String responseCode;
+
+    @Column(name = "transaction_status", length = 10)
+    private String transactionStatus;
+
+    @Column(name = "transaction_no", length = 50)
+    private String transactionNo;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private PaymentInboxStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", columnDefinition = "text")
+    private String lastError;
+
+    @Column(name = "received_at", nullable = false)
+    private LocalDateTime receivedAt;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    public boolean isSuccessful() {
+        return "00".equals(responseCode) && "00".equals(transactionStatus);
+    }
+}
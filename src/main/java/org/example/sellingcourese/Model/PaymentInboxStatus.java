@@ -0,0 +1,9 @@
+package org.example.sellingcourese.Model;
+
+// Trạng thái xử lý một callback/IPN của VNPay trong payment_inbox
+public enum PaymentInboxStatus {
+    PENDING,    // Chờ worker xử lý (hoặc chờ retry)
+    PROCESSING, // Worker đã nhận, hết hạn lease thì được nhận lại
+    DONE,       // Đã áp dụng vào đơn hàng
+    FAILED      // Không áp dụng được (sai số tiền, không có đơn hàng, hết số lần retry)
+}
@@ -0,0 +1,52 @@
+package org.example.sellingcourese.Model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Sự kiện sau thanh toán, ghi cùng transaction với thay đổi đơn hàng; PaymentOutboxRelay phát đi sau khi commit
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "payment_outbox",
+        indexes = @Index(name = "idx_payment_outbox_published_at", columnList = "published_at, id"))
+public class PaymentOutbox {
+    public static final String ORDER_PAID = "ORDER_PAID";
+    public static final String PAYMENT_FAILED = "PAYMENT_FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "event_type", nullable = false, length = 50)
+    private String eventType;
+
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(precision = 14, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "txn_ref", length = 100)
+    private String txnRef;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "published_at")
+    private LocalDateTime publishedAt;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", columnDefinition = "text")
+    private String lastError;
+}
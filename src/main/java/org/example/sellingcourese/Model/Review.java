@@ -10,7 +10,9 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "Reviews")
+@Table(name = "Reviews", indexes = {
+        @Index(name = "idx_reviews_course_id", columnList = "course_id")
+})
 public class Review {
 
     @Id
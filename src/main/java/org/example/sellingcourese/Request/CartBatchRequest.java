@@ -0,0 +1,32 @@
+package org.example.sellingcourese.Request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+// Nhiều thay đổi giỏ hàng trong một request, áp dụng theo thứ tự
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartBatchRequest {
+    private List<Operation> operations;
+
+    public enum OperationType {
+        ADD, REMOVE, SET_QUANTITY
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Operation {
+        private OperationType type;
+        private Long courseID;
+        // ADD: số lượng cộng thêm (mặc định 1); SET_QUANTITY: số lượng mới, <= 0 là xóa
+        private Integer quantity;
+        // Bỏ qua, giá luôn lấy từ course (giữ lại để client cũ vẫn gửi được)
+        private BigDecimal price;
+    }
+}
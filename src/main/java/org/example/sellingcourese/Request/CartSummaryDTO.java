@@ -0,0 +1,23 @@
+package org.example.sellingcourese.Request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+// Tóm tắt giỏ hàng trả về sau thao tác batch
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartSummaryDTO {
+    private Long cartID;
+    private Long userID;
+    private int itemCount;
+    private int totalQuantity;
+    private BigDecimal totalPrice;
+    private List<Long> courseIDs;
+    // Các course bị bỏ qua khi ADD vì user đã mua
+    private List<Long> skippedCourseIDs;
+}
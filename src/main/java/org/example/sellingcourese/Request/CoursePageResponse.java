@@ -0,0 +1,17 @@
+package org.example.sellingcourese.Request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CoursePageResponse {
+    private List<CourseSummaryDTO> items;
+    // Token để lấy trang tiếp theo, null nếu đã hết dữ liệu
+    private String nextCursor;
+    private boolean hasMore;
+}
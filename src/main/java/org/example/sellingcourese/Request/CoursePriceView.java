@@ -0,0 +1,9 @@
+package org.example.sellingcourese.Request;
+
+import java.math.BigDecimal;
+
+// Projection id + giá hiện tại của course (CourseRepository.findPricesByIdIn)
+public interface CoursePriceView {
+    Long getId();
+    BigDecimal getPrice();
+}
@@ -0,0 +1,20 @@
+package org.example.sellingcourese.Request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// Doanh thu của một course trong khoảng ngày (JPQL constructor expression trong CourseSalesDailyRepository)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CourseSalesDTO {
+    private Long courseId;
+    // null nếu course đã bị xóa
+    private String title;
+    private Long teacherId;
+    private Long unitsSold;
+    private BigDecimal revenue;
+}
@@ -0,0 +1,15 @@
+package org.example.sellingcourese.Request;
+
+import java.math.BigDecimal;
+
+// Projection cho kết quả full-text search (native query trong CourseRepository)
+public interface CourseSearchResult {
+    Long getId();
+    String getTitle();
+    String getThumbnailUrl();
+    BigDecimal getPrice();
+    Long getTeacherId();
+    Long getCategoryId();
+    Integer getStatus();
+    Double getRank();
+}
@@ -0,0 +1,36 @@
+package org.example.sellingcourese.Request;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+// Bản rút gọn của Course cho trang danh sách (không có description, cancelReason)
+@Data
+@NoArgsConstructor
+public class CourseSummaryDTO {
+    private Long id;
+    private String title;
+    private String thumbnailUrl;
+    private BigDecimal price;
+    private Long teacherId;
+    private Long categoryId;
+    private String videoUrl;
+    private Integer status;
+    // Chiều rộng -> URL thumbnail đã resize (dùng cho srcset), rỗng nếu chưa tạo
+    private Map<Integer, String> thumbnails = Map.of();
+
+    // Dùng trong JPQL constructor expression (CourseRepository)
+    public CourseSummaryDTO(Long id, String title, String thumbnailUrl, BigDecimal price, Long teacherId,
+                            Long categoryId, String videoUrl, Integer status) {
+        this.id = id;
+        this.title = title;
+        this.thumbnailUrl = thumbnailUrl;
+        this.price = price;
+        this.teacherId = teacherId;
+        this.categoryId = categoryId;
+        this.videoUrl = videoUrl;
+        this.status = status;
+    }
+}
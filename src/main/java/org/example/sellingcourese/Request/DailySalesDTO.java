@@ -0,0 +1,18 @@
+package org.example.sellingcourese.Request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Tổng doanh thu một ngày (JPQL constructor expression trong CourseSalesDailyRepository)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailySalesDTO {
+    private LocalDate salesDate;
+    private Long unitsSold;
+    private BigDecimal revenue;
+}
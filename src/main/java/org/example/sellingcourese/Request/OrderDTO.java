@@ -18,4 +18,6 @@ public class OrderDTO {
     public Long statusId;
     public int quantity;
     private List<OrderItemDTO> orderItems;
+    // Có thể gửi qua header Idempotency-Key thay cho trường này
+    private String idempotencyKey;
 }
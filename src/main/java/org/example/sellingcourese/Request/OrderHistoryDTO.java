@@ -0,0 +1,32 @@
+package org.example.sellingcourese.Request;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+// Một đơn hàng trong lịch sử mua của user, tổng tiền được tính sẵn trong SQL
+@Data
+@NoArgsConstructor
+public class OrderHistoryDTO {
+    private Long orderId;
+    private Long statusId;
+    private String statusName;
+    private BigDecimal totalPrice;
+    private Long itemCount;
+    // Tổng price * quantity của các dòng (đơn giá lúc đặt, hoặc giá course hiện tại với dòng cũ)
+    private BigDecimal itemsTotal;
+    private List<OrderHistoryLineDTO> items = List.of();
+
+    // Dùng trong JPQL constructor expression (OrderRepository)
+    public OrderHistoryDTO(Long orderId, Long statusId, String statusName, BigDecimal totalPrice,
+                           Long itemCount, BigDecimal itemsTotal) {
+        this.orderId = orderId;
+        this.statusId = statusId;
+        this.statusName = statusName;
+        this.totalPrice = totalPrice;
+        this.itemCount = itemCount;
+        this.itemsTotal = itemsTotal != null ? itemsTotal : BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,34 @@
+package org.example.sellingcourese.Request;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// Một dòng của đơn hàng kèm thông tin course cần hiển thị
+@Data
+@NoArgsConstructor
+public class OrderHistoryLineDTO {
+    // Chỉ dùng để gom dòng theo đơn hàng, đã có trong OrderHistoryDTO
+    @JsonIgnore
+    private Long orderId;
+    private Long courseId;
+    private String title;
+    private String thumbnailUrl;
+    private BigDecimal price;
+    private Integer quantity;
+    private BigDecimal lineTotal;
+
+    // Dùng trong JPQL constructor expression (OrderDetailRepository)
+    public OrderHistoryLineDTO(Long orderId, Long courseId, String title, String thumbnailUrl, BigDecimal price,
+                               Integer quantity, BigDecimal lineTotal) {
+        this.orderId = orderId;
+        this.courseId = courseId;
+        this.title = title;
+        this.thumbnailUrl = thumbnailUrl;
+        this.price = price;
+        this.quantity = quantity;
+        this.lineTotal = lineTotal;
+    }
+}
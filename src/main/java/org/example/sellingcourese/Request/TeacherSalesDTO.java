@@ -0,0 +1,19 @@
+package org.example.sellingcourese.Request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// Doanh thu của một giảng viên trong khoảng ngày (JPQL constructor expression trong CourseSalesDailyRepository)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TeacherSalesDTO {
+    private Long teacherId;
+    private String teacherName;
+    private Long courseCount;
+    private Long unitsSold;
+    private BigDecimal revenue;
+}
@@ -0,0 +1,31 @@
+package org.example.sellingcourese.Request;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+// Tham số của callback/IPN VNPay sau khi đã kiểm tra chữ ký (VNPayService.parseCallback)
+@Getter
+@AllArgsConstructor
+public class VNPayCallback {
+    private final String txnRef;
+    // null nếu vnp_OrderInfo không chứa order id
+    private final Long orderId;
+    // vnp_Amount / 100
+    private final BigDecimal amount;
+    private final String responseCode;
+    private final String transactionStatus;
+    private final String transactionNo;
+
+    public boolean isSuccessful() {
+        return "00".equals(responseCode) && "00".equals(transactionStatus);
+    }
+
+    // Giao dịch đã có kết quả cuối: 00 thành công, 02 lỗi. Các trạng thái khác (01 chưa hoàn tất,
+    // 07 nghi ngờ gian lận, ...) còn có thể đổi nên không được ghi nhận như thất bại
+    public boolean isFinal() {
+        return "00".equals(responseCode)
+                && ("00".equals(transactionStatus) || "02".equals(transactionStatus));
+    }
+}
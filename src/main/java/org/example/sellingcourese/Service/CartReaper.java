@@ -0,0 +1,111 @@
+package org.example.sellingcourese.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Xóa giỏ hàng bị bỏ quên (không hoạt động quá cart.reaper.max-age-days) theo từng lô nhỏ.
+// Mỗi lô là một câu lệnh tự commit, chỉ khóa tối đa batch-size cart nên không giữ lock lâu trên bảng nóng.
+@Component
+public class CartReaper {
+    private static final Logger log = LoggerFactory.getLogger(CartReaper.class);
+
+    // Chọn một lô cart hết hạn (bỏ qua dòng đang bị khóa), xóa dòng giỏ hàng rồi xóa cart trong cùng câu lệnh
+    private static final String DELETE_BATCH_SQL =
+            "WITH expired AS (SELECT \"CartID\" FROM \"Carts\" WHERE \"CreatedDate\" < ? " +
+            "ORDER BY \"CartID\" LIMIT ? FOR UPDATE SKIP LOCKED), " +
+            "lines AS (DELETE FROM \"CartDetails\" d USING expired e WHERE d.\"CartID\" = e.\"CartID\" RETURNING 1), " +
+            "carts AS (DELETE FROM \"Carts\" c USING expired e WHERE c.\"CartID\" = e.\"CartID\" RETURNING c.\"CartID\") " +
+            "SELECT \"CartID\", (SELECT count(*) FROM lines) AS line_count FROM carts";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CartSessionStore cartSessionStore;
+
+    @Value("${cart.reaper.enabled:true}")
+    private boolean enabled;
+
+    @Value("${cart.reaper.max-age-days:30}")
+    private long maxAgeDays;
+
+    @Value("${cart.reaper.batch-size:500}")
+    private int batchSize;
+
+    @Value("${cart.reaper.max-batches-per-run:200}")
+    private int maxBatchesPerRun;
+
+    private final Counter cartsReclaimed;
+    private final Counter linesReclaimed;
+    private final Timer batchTimer;
+
+    public CartReaper(MeterRegistry meterRegistry) {
+        this.cartsReclaimed = Counter.builder("cart.reaper.carts.deleted").register(meterRegistry);
+        this.linesReclaimed = Counter.builder("cart.reaper.lines.deleted").register(meterRegistry);
+        this.batchTimer = Timer.builder("cart.reaper.batch").register(meterRegistry);
+    }
+
+    private static class BatchResult {
+        private long carts;
+        private long lines;
+    }
+
+    @Scheduled(fixedDelayString = "${cart.reaper.interval-ms:3600000}", initialDelayString = "${cart.reaper.initial-delay-ms:60000}")
+    public void reap() {
+        if (!enabled) {
+            return;
+        }
+        // Ghi các thay đổi đang chờ trước để cart vừa hoạt động có CreatedDate mới
+        cartSessionStore.flushAll();
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(Duration.ofDays(maxAgeDays)));
+        long totalCarts = 0;
+        long totalLines = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            BatchResult result = batchTimer.record(() -> deleteBatch(cutoff));
+            totalCarts += result.carts;
+            totalLines += result.lines;
+            if (result.carts < batchSize) {
+                break;
+            }
+        }
+        if (totalCarts > 0) {
+            log.info("Cart reaper removed {} carts and {} cart lines inactive since {}", totalCarts, totalLines, cutoff);
+        }
+    }
+
+    private BatchResult deleteBatch(Timestamp cutoff) {
+        BatchResult result = new BatchResult();
+        // Thay đổi giỏ hàng sau mốc này (kể cả khi câu DELETE đang chạy) làm session được giữ lại
+        long snapshotVersion = cartSessionStore.currentVersion();
+        List<Long> deletedCartIds = jdbcTemplate.query(DELETE_BATCH_SQL, rs -> {
+            List<Long> ids = new ArrayList<>();
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+                result.lines = rs.getLong(2);
+            }
+            return ids;
+        }, cutoff, batchSize);
+        result.carts = deletedCartIds == null ? 0 : deletedCartIds.size();
+        if (deletedCartIds != null) {
+            // Giỏ hàng còn trong bộ nhớ trỏ tới cart đã xóa: bỏ đi nếu không đổi từ snapshot, ngược lại tạo lại cart
+            deletedCartIds.forEach(cartId -> cartSessionStore.onCartReaped(cartId, snapshotVersion));
+        }
+        cartsReclaimed.increment(result.carts);
+        linesReclaimed.increment(result.lines);
+        return result;
+    }
+}
@@ -161,22 +161,27 @@ package org.example.sellingcourese.Service;
 import org.example.sellingcourese.Model.Cart;
 import org.example.sellingcourese.Model.CartDetail;
 import org.example.sellingcourese.Model.Course;
-import org.example.sellingcourese.Model.OrderItem;
+import org.example.sellingcourese.Request.CartBatchRequest;
 import org.example.sellingcourese.Request.CartDTO;
+import org.example.sellingcourese.Request.CartSummaryDTO;
 import org.example.sellingcourese.Request.CourseDTO;
+import org.example.sellingcourese.Request.CoursePriceView;
 import org.example.sellingcourese.repository.CartRepository;
 import org.example.sellingcourese.repository.CartDetailRepository;
 import org.example.sellingcourese.repository.CourseRepository;
 import org.example.sellingcourese.repository.OrderDetailRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.math.BigDecimal;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class CartService {
+    private static final int MAX_BATCH_OPERATIONS = 200;
 
     @Autowired
     private CartRepository cartRepository;
@@ -186,14 +191,21 @@ public class CartService {
     private CartDetailRepository cartDetailRepository;
     @Autowired
     private OrderDetailRepository orderDetailRepository;
+    @Autowired
+    private CartSessionStore cartSessionStore;
 
-    // Get all carts
+    // Get all carts: giỏ hàng đang nằm trong bộ nhớ (có thể có thay đổi chưa ghi) thay cho bản trong DB
     public List<Cart> getAllCarts() {
-        return cartRepository.findAll();
+        return cartRepository.findAll().stream()
+                .map(cart -> cartSessionStore.cached(cart.getUserID()).map(this::toCart).orElse(cart))
+                .toList();
     }
 
-    // Find cart by ID
+    // Find cart by ID (chỉ ghi các thay đổi đang chờ của user sở hữu cart rồi đọc từ DB)
     public Cart getCartById(Long id) {
+        CartSessionStore.CartView view = cartSessionStore.getByCartId(id)
+                .orElseThrow(() -> new RuntimeException("Cart not found with ID: " + id));
+        cartSessionStore.flush(view.getUserID());
         return cartRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Cart not found with ID: " + id));
     }
@@ -225,13 +237,9 @@ public class CartService {
 //    }
 
     public boolean isCourseInOrder(Long courseId, Long userId) {
-        // Tìm tất cả order items của user này
-        List<OrderItem> orderItems =orderDetailRepository.findByOrder_UserId(userId);
-        // Kiểm tra courseID có trùng không
-        return orderItems.stream().anyMatch(orderItem -> orderItem.getCourseId().equals(courseId));
+        return orderDetailRepository.existsByCourseIdAndOrder_UserId(courseId, userId);
     }
 
-    @Transactional
     public Map<String, Object> saveCartWithDetails(CartDTO cartDTO) {
         Map<String, Object> response = new HashMap<>();
 
@@ -242,46 +250,22 @@ public class CartService {
             response.put("message", "Khóa học này đã được đặt hàng và thanh toán trước đó. Không thể thêm vào giỏ hàng.");
             return response;
         }
+        // Giá lấy từ Courses, không dùng giá client gửi lên
+        BigDecimal price = requireCoursePrices(Collections.singletonList(cartDTO.getCourseID())).get(cartDTO.getCourseID());
 
-        // Tìm giỏ hàng hiện tại của người dùng
-        Cart cart = cartRepository.findByUserID(cartDTO.getUserID())
-                .stream()
-                .findFirst()
-                .orElseGet(() -> {
-                    // Nếu chưa có giỏ hàng, tạo mới
-                    Cart newCart = new Cart();
-                    newCart.setUserID(cartDTO.getUserID());
-                    newCart.setCreatedDate(new Date());
-                    return cartRepository.save(newCart);
-                });
-
-        // Kiểm tra sản phẩm đã có trong giỏ hàng chưa
-        cartDetailRepository.findByCartIDAndCourseID(cart.getCartID(), cartDTO.getCourseID())
-                .ifPresentOrElse(
-                        // Nếu đã tồn tại, tăng số lượng sản phẩm
-                        existingCartDetail -> {
-                            existingCartDetail.setQuantity(existingCartDetail.getQuantity() + cartDTO.getQuantity());
-                            cartDetailRepository.save(existingCartDetail);
-                        },
-                        // Nếu chưa tồn tại, thêm mới sản phẩm vào giỏ hàng
-                        () -> {
-                            CartDetail newCartDetail = new CartDetail();
-                            newCartDetail.setCartID(cart.getCartID());
-                            newCartDetail.setCourseID(cartDTO.getCourseID());
-                            newCartDetail.setQuantity(cartDTO.getQuantity());
-                            newCartDetail.setPrice(cartDTO.getPrice());
-                            cartDetailRepository.save(newCartDetail);
-                        }
-                );
+        // Thêm/cộng dồn trong giỏ hàng bộ nhớ, được ghi xuống DB theo lô
+        CartSessionStore.CartLine line = cartSessionStore.addLine(cartDTO.getUserID(), cartDTO.getCourseID(),
+                cartDTO.getQuantity(), price);
 
-        // Lấy danh sách CartDetails và gắn vào Cart
-        List<CartDetail> cartDetails = cartDetailRepository.findAllByCartID(cart.getCartID());
-        cart.setCartDetails(cartDetails);
-
-        // Trả về phản hồi thành công
+        // Trả về phản hồi thành công kèm giỏ hàng hiện tại (đọc từ bộ nhớ, không thêm truy vấn DB)
+        CartSessionStore.CartView view = cartSessionStore.get(cartDTO.getUserID());
         response.put("status", "success");
         response.put("message", "Khóa học đã được thêm vào giỏ hàng thành công.");
-        response.put("cart", cart);
+        response.put("cart", toCart(view));
+        response.put("cartID", view.getCartID());
+        response.put("cartDetailID", line.getCartDetailID());
+        response.put("courseID", line.getCourseID());
+        response.put("quantity", line.getQuantity());
         return response;
     }
 
@@ -327,44 +311,121 @@ public class CartService {
 //        return cart;
 //    }
 
-    // Update cart with details
-    @Transactional
-    public Cart updateCartWithDetails(Long cartId, Cart updatedCart, List<CartDetail> updatedDetails) {
-        // Kiểm tra cart tồn tại
-        Cart existingCart = cartRepository.findById(cartId)
-                .orElseThrow(() -> new RuntimeException("Cart not found with ID: " + cartId));
+    // Nhiều thay đổi (ADD / REMOVE / SET_QUANTITY) trong một request: kiểm tra đã mua bằng một truy vấn,
+    // áp dụng dưới một lần giữ lock rồi ghi xuống DB trong một transaction (batch DELETE + batch UPSERT)
+    public CartSummaryDTO applyBatch(Long userID, CartBatchRequest request) {
+        List<CartBatchRequest.Operation> operations = request == null || request.getOperations() == null
+                ? List.of() : request.getOperations();
+        if (operations.size() > MAX_BATCH_OPERATIONS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + MAX_BATCH_OPERATIONS + " operations per request");
+        }
+        Set<Long> addedCourseIds = new HashSet<>();
+        for (CartBatchRequest.Operation operation : operations) {
+            if (operation == null || operation.getType() == null || operation.getCourseID() == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Each operation needs a type and a courseID");
+            }
+            if (operation.getType() != CartBatchRequest.OperationType.REMOVE) {
+                addedCourseIds.add(operation.getCourseID());
+            }
+        }
+
+        Set<Long> owned = addedCourseIds.isEmpty()
+                ? Set.of()
+                : new HashSet<>(orderDetailRepository.findOwnedCourseIds(userID, addedCourseIds));
+        // Course và giá (luôn lấy từ Courses) được kiểm tra bằng một truy vấn trước khi giữ lock giỏ hàng
+        Set<Long> notOwned = new HashSet<>(addedCourseIds);
+        notOwned.removeAll(owned);
+        Map<Long, BigDecimal> prices = requireCoursePrices(notOwned);
 
-        // Cập nhật thông tin Cart
-        existingCart.setUserID(updatedCart.getUserID());
-        existingCart.setCreatedDate(new Date());
-        Cart savedCart = cartRepository.save(existingCart);
+        List<Long> skipped = new ArrayList<>();
+        CartSessionStore.CartView view = cartSessionStore.mutate(userID, notOwned.size(), editor -> {
+            for (CartBatchRequest.Operation operation : operations) {
+                Long courseId = operation.getCourseID();
+                switch (operation.getType()) {
+                    case REMOVE -> editor.remove(courseId);
+                    case ADD, SET_QUANTITY -> {
+                        if (owned.contains(courseId)) {
+                            skipped.add(courseId);
+                        } else if (operation.getType() == CartBatchRequest.OperationType.ADD) {
+                            int quantity = operation.getQuantity() == null ? 1 : operation.getQuantity();
+                            if (quantity > 0) {
+                                editor.add(courseId, quantity, prices.get(courseId));
+                            }
+                        } else {
+                            int quantity = operation.getQuantity() == null ? 0 : operation.getQuantity();
+                            editor.setQuantity(courseId, quantity, prices.get(courseId));
+                        }
+                    }
+                }
+            }
+        });
+        cartSessionStore.flush(userID);
 
-        // Xóa các CartDetail cũ
-        cartDetailRepository.deleteAllByCartID(cartId);
+        int totalQuantity = 0;
+        BigDecimal totalPrice = BigDecimal.ZERO;
+        for (CartSessionStore.CartLine line : view.getLines()) {
+            totalQuantity += line.getQuantity();
+            if (line.getPrice() != null) {
+                totalPrice = totalPrice.add(line.getPrice().multiply(BigDecimal.valueOf(line.getQuantity())));
+            }
+        }
+        List<Long> courseIds = view.getLines().stream().map(CartSessionStore.CartLine::getCourseID).toList();
+        return new CartSummaryDTO(view.getCartID(), userID, courseIds.size(), totalQuantity, totalPrice,
+                courseIds, skipped);
+    }
 
-        // Thêm các CartDetail mới
-        for (CartDetail cartDetail : updatedDetails) {
-            cartDetail.setCartID(savedCart.getCartID());
-            cartDetailRepository.save(cartDetail);
+    // Giá hiện tại của các course trong một truy vấn. Course không tồn tại -> 400: dòng giỏ hàng trỏ tới
+    // course không tồn tại không bao giờ ghi được xuống CartDetails
+    private Map<Long, BigDecimal> requireCoursePrices(Collection<Long> courseIds) {
+        if (courseIds.isEmpty()) {
+            return Map.of();
+        }
+        if (courseIds.contains(null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "courseID is required");
+        }
+        Map<Long, BigDecimal> prices = new HashMap<>();
+        for (CoursePriceView course : courseRepository.findPricesByIdIn(courseIds)) {
+            prices.put(course.getId(), course.getPrice());
+        }
+        for (Long courseId : courseIds) {
+            if (!prices.containsKey(courseId)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Course not found with ID: " + courseId);
+            }
         }
+        return prices;
+    }
+
+    // Update cart with details: thay toàn bộ dòng giỏ hàng của user sở hữu cart
+    public Cart updateCartWithDetails(Long cartId, List<CartDetail> updatedDetails) {
+        CartSessionStore.CartView existing = cartSessionStore.getByCartId(cartId)
+                .orElseThrow(() -> new RuntimeException("Cart not found with ID: " + cartId));
+        Map<Long, BigDecimal> prices = requireCoursePrices(
+                updatedDetails.stream().map(CartDetail::getCourseID).toList());
 
-        // Gắn danh sách CartDetail mới vào Cart để trả về
-        savedCart.setCartDetails(updatedDetails);
-        return savedCart;
+        CartSessionStore.CartView view = cartSessionStore.mutate(existing.getUserID(), prices.size(), editor -> {
+            editor.clear();
+            for (CartDetail cartDetail : updatedDetails) {
+                editor.add(cartDetail.getCourseID(), cartDetail.getQuantity(), prices.get(cartDetail.getCourseID()));
+            }
+        });
+        return toCart(view);
     }
 
     @Transactional
     public void deleteCartNews(Long cartID) {
+        cartSessionStore.evictCart(cartID);
         cartDetailRepository.deleteByCartID(cartID);
-        cartRepository.deleteById(cartID);
+        cartRepository.deleteByCartID(cartID);
     }
 
     // Delete a cart
     @Transactional
     public void deleteCart(Long id) {
         if (cartRepository.existsById(id)) {
+            cartSessionStore.evictCart(id);
             cartDetailRepository.deleteAllByCartID(id);
-            cartRepository.deleteById(id);
+            cartRepository.deleteByCartID(id);
         } else {
             throw new RuntimeException("Cart not found with ID: " + id);
         }
@@ -372,49 +433,67 @@ public class CartService {
 
     // Remove a course from the cart
     public void removeCourseFromCart(Long cartDetailId) {
-        if (cartDetailRepository.existsById(cartDetailId)) {
-            cartDetailRepository.deleteById(cartDetailId);
-        } else {
+        if (!cartSessionStore.removeLineById(cartDetailId)) {
             throw new RuntimeException("CartDetail not found with ID: " + cartDetailId);
         }
     }
 
     public List<Cart> getCartsByUserID(Long userID) {
-        return cartRepository.findByUserID(userID);
+        CartSessionStore.CartView view = cartSessionStore.get(userID);
+        return view.getCartID() == null ? List.of() : List.of(toCart(view));
     }
 
     public List<CartDetail> getCartDetailsByCartID(Long cartID) {
-        return cartDetailRepository.findByCartID(cartID);
+        return cartSessionStore.getByCartId(cartID)
+                .map(view -> view.getLines().stream().map(line -> toCartDetail(view.getCartID(), line)).toList())
+                .orElse(List.of());
     }
 
-    @Transactional
+    // Một truy vấn cho mọi kích thước giỏ hàng: giỏ hàng đang nằm trong bộ nhớ (có thể có thay đổi chưa ghi) chỉ
+    // cần nạp course của các dòng; ngược lại DB là bản mới nhất và được đọc bằng một truy vấn join
+    // (course đã xóa -> title/description null)
     public List<CartDTO> getCartDetailsWithCourseByCartID(Long cartID) {
-        List<CartDetail> cartDetails = cartDetailRepository.findByCartID(cartID);
-
-        return cartDetails.stream().map(cartDetail -> {
-            Course course = courseRepository.findById(cartDetail.getCourseID()).orElse(null);
-
-            // Tạo CartDTO
-            return new CartDTO(
-                    cartDetail.getCartDetailID(),
-                    cartDetail.getCartID(),
-                    cartDetail.getCart().getUserID(),
-                    cartDetail.getCart().getCreatedDate(),
-                    cartDetail.getCourseID(),
-                    cartDetail.getQuantity(),
-                    cartDetail.getPrice(),
+        Optional<CartSessionStore.CartView> cart = cartSessionStore.cachedByCartId(cartID);
+        if (cart.isEmpty()) {
+            return cartDetailRepository.findCartDTOsByCartID(cartID);
+        }
+        CartSessionStore.CartView view = cart.get();
+        if (view.getLines().isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Course> courses = new HashMap<>();
+        courseRepository.findAllById(view.getLines().stream().map(CartSessionStore.CartLine::getCourseID).toList())
+                .forEach(course -> courses.put(course.getId(), course));
+        return view.getLines().stream().map(line -> {
+            Course course = courses.get(line.getCourseID());
+            return new CartDTO(line.getCartDetailID(), view.getCartID(), view.getUserID(),
+                    view.getCreatedDate(), line.getCourseID(), line.getQuantity(), line.getPrice(),
                     course != null ? course.getTitle() : null,
-                    course != null ? course.getDescription() : null
-            );
-        }).collect(Collectors.toList());
-
+                    course != null ? course.getDescription() : null);
+        }).toList();
     }
-    @Transactional
+
+    // Xóa các dòng giỏ hàng; dòng Carts của user được giữ lại để dùng tiếp
     public void clearCartByUserID(Long userID) {
-        List<Cart> carts = cartRepository.findByUserID(userID);
-        for (Cart cart : carts) {
-            cartDetailRepository.deleteByCartID(cart.getCartID());
-        }
-        cartRepository.deleteByUserID(userID);
+        cartSessionStore.clear(userID);
+    }
+
+    private Cart toCart(CartSessionStore.CartView view) {
+        Cart cart = new Cart();
+        cart.setCartID(view.getCartID());
+        cart.setUserID(view.getUserID());
+        cart.setCreatedDate(view.getCreatedDate());
+        cart.setCartDetails(view.getLines().stream().map(line -> toCartDetail(view.getCartID(), line)).toList());
+        return cart;
+    }
+
+    private CartDetail toCartDetail(Long cartId, CartSessionStore.CartLine line) {
+        CartDetail cartDetail = new CartDetail();
+        cartDetail.setCartDetailID(line.getCartDetailID());
+        cartDetail.setCartID(cartId);
+        cartDetail.setCourseID(line.getCourseID());
+        cartDetail.setQuantity(line.getQuantity());
+        cartDetail.setPrice(line.getPrice());
+        return cartDetail;
     }
 }
\ No newline at end of file
@@ -0,0 +1,826 @@
+package org.example.sellingcourese.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.example.sellingcourese.Model.Cart;
+import org.example.sellingcourese.Model.CartDetail;
+import org.example.sellingcourese.repository.CartDetailRepository;
+import org.example.sellingcourese.repository.CartRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Giỏ hàng trong bộ nhớ, theo userID, đứng trước bảng Carts/CartDetails.
+// - Đọc/ghi dưới striped lock (mỗi user luôn rơi vào cùng một stripe), nạp lười từ DB ở lần truy cập đầu.
+//   Stripe lock chỉ bảo vệ thao tác trong bộ nhớ: nạp giỏ hàng, tạo dòng Carts và cấp id dòng mới chạy ngoài lock.
+// - Thay đổi dòng giỏ hàng được ghi xuống DB theo lô (write-behind) bởi flushDirty; dòng Carts được tạo ngay
+//   ở lần thêm đầu tiên để client luôn có CartID.
+// - Flush khóa theo stripe (flushLocks, cùng cách chia stripe với locks): hai lần ghi cùng một cart không đan xen,
+//   còn flush của các stripe khác chạy song song. Mỗi lô ghi trong transaction riêng.
+// - Checkout chặn các thay đổi của riêng user đó rồi flush(userId); khi tắt ứng dụng mọi thay đổi được flush.
+//   Sau khi khởi động lại, giỏ hàng được nạp lại từ DB nên DB luôn là nguồn dữ liệu gốc
+//   (nếu crash, mất tối đa một chu kỳ flush).
+@Component
+public class CartSessionStore {
+    private static final Logger log = LoggerFactory.getLogger(CartSessionStore.class);
+    private static final int STRIPES = 64;
+    // Số lần nạp giỏ hàng ngoài lock trước khi nạp dưới lock (xem withSession)
+    private static final int LOAD_ATTEMPTS = 3;
+
+    private static final String ENSURE_CART_SQL =
+            "INSERT INTO \"Carts\" (\"UserID\", \"CreatedDate\") VALUES (?, now()) " +
+            "ON CONFLICT (\"UserID\") DO UPDATE SET \"UserID\" = EXCLUDED.\"UserID\" RETURNING \"CartID\"";
+    private static final String TOUCH_CARTS_SQL =
+            "UPDATE \"Carts\" SET \"CreatedDate\" = now() WHERE \"CartID\" = ANY(?)";
+    // Cấp n id dòng giỏ hàng trong một round trip
+    private static final String NEXT_LINE_IDS_SQL =
+            "SELECT nextval(pg_get_serial_sequence('\"CartDetails\"', 'CartDetailID')) FROM generate_series(1, ?)";
+    // Đồng bộ toàn bộ trạng thái của một cart: xóa các course không còn trong giỏ, upsert các dòng còn lại.
+    // WHERE EXISTS tránh ghi lại dòng cho cart vừa bị xóa trực tiếp trong DB hoặc course đã bị xóa.
+    private static final String DELETE_REMOVED_LINES_SQL =
+            "DELETE FROM \"CartDetails\" WHERE \"CartID\" = ? AND \"CourseID\" <> ALL(?)";
+    private static final String UPSERT_LINE_SQL =
+            "INSERT INTO \"CartDetails\" (\"CartDetailID\", \"CartID\", \"CourseID\", \"Quantity\", \"Price\") " +
+            "SELECT ?, ?, ?, ?, ? WHERE EXISTS (SELECT 1 FROM \"Carts\" WHERE \"CartID\" = ?) " +
+            "AND EXISTS (SELECT 1 FROM \"Courses\" WHERE \"id\" = ? AND \"deleted_at\" IS NULL) " +
+            "ON CONFLICT (\"CartID\", \"CourseID\") DO UPDATE SET " +
+            "\"Quantity\" = EXCLUDED.\"Quantity\", \"Price\" = EXCLUDED.\"Price\"";
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartDetailRepository cartDetailRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${cart.store.idle-minutes:30}")
+    private long idleMinutes;
+
+    @Value("${cart.store.max-flush-attempts:5}")
+    private int maxFlushAttempts;
+
+    private final Map<Long, CartSession> sessions = new ConcurrentHashMap<>();
+    private final Map<Long, Long> userByCartId = new ConcurrentHashMap<>();
+    private final Map<Long, Long> userByLineId = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyUsers = ConcurrentHashMap.newKeySet();
+    // Nguồn version chung cho mọi session, để CartReaper chụp được một mốc duy nhất trước khi xóa
+    private final AtomicLong versions = new AtomicLong();
+    // Tăng mỗi khi một session bị bỏ khỏi bộ nhớ; bản nạp ngoài lock chỉ được dùng nếu không có lần bỏ nào
+    // xảy ra trong lúc đọc DB (bản đọc trước khi session cũ được ghi rồi bỏ đi có thể đã cũ)
+    private final AtomicLong removals = new AtomicLong();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final ReentrantLock[] flushLocks = new ReentrantLock[STRIPES];
+
+    private final Timer flushTimer;
+    private final Counter flushedCarts;
+    private final Counter flushFailures;
+    private final Counter droppedCarts;
+
+    public CartSessionStore(MeterRegistry meterRegistry) {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+            flushLocks[i] = new ReentrantLock();
+        }
+        Gauge.builder("cart.store.sessions", sessions, Map::size).register(meterRegistry);
+        Gauge.builder("cart.store.dirty", dirtyUsers, Set::size).register(meterRegistry);
+        this.flushTimer = Timer.builder("cart.store.flush").register(meterRegistry);
+        this.flushedCarts = Counter.builder("cart.store.flushed.carts").register(meterRegistry);
+        this.flushFailures = Counter.builder("cart.store.flush.failures").register(meterRegistry);
+        this.droppedCarts = Counter.builder("cart.store.flush.dropped").register(meterRegistry);
+    }
+
+    // Dòng giỏ hàng bất biến; thay đổi số lượng tạo dòng mới
+    @Getter
+    @AllArgsConstructor
+    public static class CartLine {
+        private final Long cartDetailID;
+        private final Long courseID;
+        private final int quantity;
+        private final BigDecimal price;
+    }
+
+    // Bản sao giỏ hàng trả cho bên gọi, an toàn khi đọc ngoài lock
+    @Getter
+    @AllArgsConstructor
+    public static class CartView {
+        private final Long cartID;
+        private final Long userID;
+        private final Date createdDate;
+        private final List<CartLine> lines;
+    }
+
+    private static class CartSession {
+        private final Long userId;
+        private Long cartId;
+        private Date createdDate;
+        private final LinkedHashMap<Long, CartLine> lines = new LinkedHashMap<>();
+        // version lấy từ versions sau mỗi thay đổi; flushedVersion là version đã có trong DB
+        private long version;
+        private long flushedVersion;
+        // Số lần flush lỗi liên tiếp của riêng cart này
+        private int failedFlushes;
+        // Đang checkout: mọi thay đổi của user bị từ chối cho tới khi checkout xong
+        private boolean checkingOut;
+        private long lastAccess = System.currentTimeMillis();
+
+        private CartSession(Long userId) {
+            this.userId = userId;
+        }
+
+        private CartView view() {
+            return new CartView(cartId, userId, createdDate, List.copyOf(lines.values()));
+        }
+    }
+
+    // Snapshot của một cart để ghi xuống DB ngoài lock
+    private static class PendingFlush {
+        private final Long userId;
+        private final Long cartId;
+        private final long version;
+        private final List<CartLine> lines;
+
+        private PendingFlush(CartSession session) {
+            this.userId = session.userId;
+            this.cartId = session.cartId;
+            this.version = session.version;
+            this.lines = List.copyOf(session.lines.values());
+        }
+    }
+
+    public CartView get(Long userId) {
+        return withSession(userId, CartSession::view);
+    }
+
+    // CartID -> giỏ hàng; empty nếu cart không tồn tại
+    public Optional<CartView> getByCartId(Long cartId) {
+        Long userId = userIdForCart(cartId);
+        return userId == null ? Optional.empty() : Optional.of(get(userId));
+    }
+
+    // Giỏ hàng của user nếu đang nằm trong bộ nhớ; không nạp từ DB
+    public Optional<CartView> cached(Long userId) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            CartSession session = sessions.get(userId);
+            return session == null ? Optional.empty() : Optional.of(session.view());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Optional<CartView> cachedByCartId(Long cartId) {
+        Long userId = userByCartId.get(cartId);
+        return userId == null ? Optional.empty() : cached(userId).filter(view -> cartId.equals(view.getCartID()));
+    }
+
+    // Thêm course vào giỏ hoặc cộng dồn số lượng; trả về dòng sau khi thay đổi
+    public CartLine addLine(Long userId, Long courseId, int quantity, BigDecimal price) {
+        // Course đã có trong giỏ: chỉ cộng dồn trong bộ nhớ
+        CartLine updated = editSession(userId, session -> {
+            CartLine existing = session.lines.get(courseId);
+            if (existing == null) {
+                return null;
+            }
+            CartLine line = new CartLine(existing.getCartDetailID(), courseId,
+                    existing.getQuantity() + quantity, existing.getPrice());
+            session.lines.put(courseId, line);
+            markDirty(session);
+            return line;
+        });
+        if (updated != null) {
+            return updated;
+        }
+        // Dòng mới: dòng Carts và id dòng được cấp ngoài lock (nếu vừa có request khác thêm cùng course thì cộng dồn)
+        return mutate(userId, 1, editor -> editor.add(courseId, quantity, price)).getLines().stream()
+                .filter(line -> line.getCourseID().equals(courseId))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    // Đặt số lượng; quantity <= 0 thì xóa dòng. Trả về false nếu course không có trong giỏ
+    public boolean setQuantity(Long userId, Long courseId, int quantity) {
+        return editSession(userId, session -> {
+            CartLine existing = session.lines.get(courseId);
+            if (existing == null) {
+                return false;
+            }
+            if (quantity <= 0) {
+                removeLine(session, courseId);
+            } else {
+                session.lines.put(courseId, new CartLine(existing.getCartDetailID(), courseId, quantity, existing.getPrice()));
+                markDirty(session);
+            }
+            return true;
+        });
+    }
+
+    public boolean removeCourse(Long userId, Long courseId) {
+        return editSession(userId, session -> session.lines.containsKey(courseId) && removeLine(session, courseId));
+    }
+
+    // Xóa theo CartDetailID (API cũ); false nếu không tìm thấy
+    public boolean removeLineById(Long cartDetailId) {
+        Long userId = userByLineId.get(cartDetailId);
+        if (userId == null) {
+            userId = cartDetailRepository.findById(cartDetailId)
+                    .flatMap(detail -> cartRepository.findById(detail.getCartID()))
+                    .map(Cart::getUserID)
+                    .orElse(null);
+        }
+        if (userId == null) {
+            return false;
+        }
+        return editSession(userId, session -> {
+            for (CartLine line : session.lines.values()) {
+                if (line.getCartDetailID().equals(cartDetailId)) {
+                    return removeLine(session, line.getCourseID());
+                }
+            }
+            return false;
+        });
+    }
+
+    // Xóa mọi dòng; dòng Carts của user được giữ lại
+    public void clear(Long userId) {
+        editSession(userId, session -> {
+            if (!session.lines.isEmpty()) {
+                session.lines.values().forEach(line -> userByLineId.remove(line.getCartDetailID()));
+                session.lines.clear();
+                markDirty(session);
+            }
+            return null;
+        });
+    }
+
+    // Áp dụng nhiều thay đổi trong một lần giữ lock. maxNewLines là số dòng mới tối đa mà changes có thể tạo:
+    // id cho các dòng đó được cấp trước bằng một truy vấn, ngoài lock (id thừa chỉ để lại khoảng trống trong sequence).
+    // Dòng Carts của user chưa có giỏ hàng cũng được tạo trước, ngoài lock.
+    public CartView mutate(Long userId, int maxNewLines, Consumer<CartEditor> changes) {
+        Deque<Long> lineIds = new ArrayDeque<>(nextLineIds(maxNewLines));
+        Long newCartId = maxNewLines > 0 && withSession(userId, session -> session.cartId) == null
+                ? createCart(userId) : null;
+        return editSession(userId, session -> {
+            if (newCartId != null) {
+                adoptCart(session, newCartId);
+            }
+            changes.accept(new CartEditor(session, lineIds));
+            return session.view();
+        });
+    }
+
+    // Bỏ session khỏi bộ nhớ khi cart bị xóa trực tiếp trong DB
+    public void evictCart(Long cartId) {
+        Long userId = userIdForCart(cartId);
+        if (userId != null) {
+            evictUser(userId);
+        }
+    }
+
+    // Course bị xóa: bỏ khỏi mọi giỏ hàng đang nằm trong bộ nhớ (flush sau đó xóa dòng tương ứng trong DB)
+    public void dropCourse(Long courseId) {
+        for (Long userId : sessions.keySet()) {
+            ReentrantLock lock = lockFor(userId);
+            lock.lock();
+            try {
+                CartSession session = sessions.get(userId);
+                if (session != null) {
+                    removeLine(session, courseId);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Mốc version hiện tại; CartReaper lấy ngay trước khi xóa một lô cart
+    public long currentVersion() {
+        return versions.get();
+    }
+
+    // Cart đã bị CartReaper xóa trong DB. Kiểm tra lại dưới lock của user: session chỉ bị bỏ nếu không thay đổi
+    // sau snapshotVersion và không còn gì chờ ghi. Nếu user vừa sửa giỏ hàng giữa lúc xóa và lúc này thì giữ
+    // session, tạo lại dòng Carts và đánh dấu dirty để lần flush sau ghi lại toàn bộ dòng.
+    public void onCartReaped(Long cartId, long snapshotVersion) {
+        Long userId = userByCartId.get(cartId);
+        if (userId == null) {
+            return;
+        }
+        CartSession reaped;
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            CartSession session = sessions.get(userId);
+            if (session == null || !cartId.equals(session.cartId)) {
+                return;
+            }
+            boolean unchanged = session.version <= snapshotVersion && session.version == session.flushedVersion;
+            if (unchanged || session.lines.isEmpty()) {
+                discard(session);
+                return;
+            }
+            // Flush bỏ qua session chưa có cart cho tới khi dòng Carts mới được gắn vào
+            userByCartId.remove(cartId);
+            session.cartId = null;
+            reaped = session;
+        } finally {
+            lock.unlock();
+        }
+
+        Long newCartId = createCart(userId);
+        lock.lock();
+        try {
+            if (sessions.get(userId) == reaped && reaped.cartId == null) {
+                adoptCart(reaped, newCartId);
+                markDirty(reaped);
+            }
+        } finally {
+            lock.unlock();
+        }
+        log.info("Cart {} of user {} was reaped while in use, recreated as cart {}", cartId, userId, newCartId);
+    }
+
+    private void evictUser(Long userId) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            CartSession session = sessions.get(userId);
+            if (session != null) {
+                discard(session);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Ghi ngay giỏ hàng của user. Lấy flush lock của stripe nên cũng chờ lần flush nền đang ghi cart này (nếu có)
+    // xong, và ghi lại nếu lần đó lỗi. Trả về khi mọi thay đổi trước lời gọi đã được commit; 503 nếu không ghi được.
+    public void flush(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        dirtyUsers.remove(userId);
+        if (!flushUsers(List.of(userId))) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Cart could not be saved, please retry");
+        }
+    }
+
+    // Checkout: chặn các thay đổi giỏ hàng của user (409 trong lúc checkout), ghi phần đang chờ xuống DB rồi chạy
+    // action, để không có thay đổi nào của user chen vào giữa lúc snapshot giỏ hàng. Không giữ lock nào trong lúc
+    // action chạy nên user khác cùng stripe không bị chặn. Thành công thì bỏ bản trong bộ nhớ.
+    public <T> T checkout(Long userId, Supplier<T> action) {
+        CartSession session = editSession(userId, current -> {
+            current.checkingOut = true;
+            return current;
+        });
+        try {
+            flush(userId);
+            T result = action.get();
+            evictUser(userId);
+            return result;
+        } finally {
+            ReentrantLock lock = lockFor(userId);
+            lock.lock();
+            try {
+                session.checkingOut = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public void flushAll() {
+        List<Long> users = new ArrayList<>(dirtyUsers);
+        dirtyUsers.removeAll(users);
+        flushUsers(users);
+    }
+
+    @Scheduled(fixedDelayString = "${cart.store.flush-interval-ms:2000}")
+    public void flushDirty() {
+        flushAll();
+        evictIdle();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushAll();
+        if (!dirtyUsers.isEmpty()) {
+            log.warn("{} carts could not be flushed before shutdown", dirtyUsers.size());
+        }
+    }
+
+    // Chỉnh sửa giỏ hàng trong mutate(), chạy dưới lock của user
+    public class CartEditor {
+        private final CartSession session;
+        private final Deque<Long> lineIds;
+
+        private CartEditor(CartSession session, Deque<Long> lineIds) {
+            this.session = session;
+            this.lineIds = lineIds;
+        }
+
+        // Chỉ truy vấn DB dưới lock khi changes tạo nhiều dòng hơn maxNewLines đã khai báo
+        private Long nextId() {
+            Long id = lineIds.poll();
+            return id != null ? id : nextLineId();
+        }
+
+        public void add(Long courseId, int quantity, BigDecimal price) {
+            ensureCart(session);
+            CartLine existing = session.lines.get(courseId);
+            CartLine line = existing != null
+                    ? new CartLine(existing.getCartDetailID(), courseId, existing.getQuantity() + quantity, existing.getPrice())
+                    : new CartLine(nextId(), courseId, quantity, price);
+            session.lines.put(courseId, line);
+            userByLineId.put(line.getCartDetailID(), session.userId);
+            markDirty(session);
+        }
+
+        public void setQuantity(Long courseId, int quantity, BigDecimal price) {
+            if (quantity <= 0) {
+                remove(courseId);
+                return;
+            }
+            ensureCart(session);
+            CartLine existing = session.lines.get(courseId);
+            CartLine line = existing != null
+                    ? new CartLine(existing.getCartDetailID(), courseId, quantity, existing.getPrice())
+                    : new CartLine(nextId(), courseId, quantity, price);
+            session.lines.put(courseId, line);
+            userByLineId.put(line.getCartDetailID(), session.userId);
+            markDirty(session);
+        }
+
+        public void remove(Long courseId) {
+            if (session.lines.containsKey(courseId)) {
+                removeLine(session, courseId);
+            }
+        }
+
+        public void clear() {
+            session.lines.values().forEach(line -> userByLineId.remove(line.getCartDetailID()));
+            session.lines.clear();
+            markDirty(session);
+        }
+    }
+
+    // Chạy action dưới lock của user. Session chưa có trong bộ nhớ được nạp từ DB trước khi lấy lock; nếu trong lúc
+    // đó có session bị bỏ khỏi bộ nhớ thì nạp lại, sau LOAD_ATTEMPTS lần mới nạp dưới lock
+    private <T> T withSession(Long userId, Function<CartSession, T> action) {
+        ReentrantLock lock = lockFor(userId);
+        for (int attempt = 1; ; attempt++) {
+            boolean lastAttempt = attempt >= LOAD_ATTEMPTS;
+            long seenRemovals = removals.get();
+            CartSession loaded = !lastAttempt && !sessions.containsKey(userId) ? load(userId) : null;
+            lock.lock();
+            try {
+                CartSession session = sessions.get(userId);
+                if (session == null) {
+                    boolean fresh = loaded != null && removals.get() == seenRemovals;
+                    if (!fresh && !lastAttempt) {
+                        continue;
+                    }
+                    session = fresh ? loaded : load(userId);
+                    install(session);
+                }
+                session.lastAccess = System.currentTimeMillis();
+                return action.apply(session);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Như withSession cho các thao tác sửa giỏ hàng; bị từ chối khi user đang checkout
+    private <T> T editSession(Long userId, Function<CartSession, T> action) {
+        return withSession(userId, session -> {
+            if (session.checkingOut) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Cart is being checked out, please retry");
+            }
+            return action.apply(session);
+        });
+    }
+
+    // Tạo dòng Carts của user (hoặc lấy dòng đã có, unique UserID); gọi ngoài lock
+    private Long createCart(Long userId) {
+        return jdbcTemplate.queryForObject(ENSURE_CART_SQL, Long.class, userId);
+    }
+
+    private void adoptCart(CartSession session, Long cartId) {
+        if (session.cartId != null) {
+            return;
+        }
+        session.cartId = cartId;
+        session.createdDate = new Date();
+        userByCartId.put(cartId, session.userId);
+    }
+
+    // Dự phòng khi cart không được tạo trước (cart vừa bị CartReaper xóa): tạo dòng Carts dưới lock
+    private void ensureCart(CartSession session) {
+        if (session.cartId == null) {
+            adoptCart(session, createCart(session.userId));
+        }
+    }
+
+    // Nạp giỏ hàng từ DB (sau khi khởi động lại hoặc sau khi session bị evict); chỉ đọc, install() đăng ký session
+    private CartSession load(Long userId) {
+        CartSession session = new CartSession(userId);
+        List<Cart> carts = cartRepository.findByUserID(userId);
+        if (!carts.isEmpty()) {
+            Cart cart = carts.get(0);
+            session.cartId = cart.getCartID();
+            session.createdDate = cart.getCreatedDate();
+            for (CartDetail detail : cartDetailRepository.findByCartID(cart.getCartID())) {
+                session.lines.put(detail.getCourseID(), new CartLine(detail.getCartDetailID(), detail.getCourseID(),
+                        detail.getQuantity(), detail.getPrice()));
+            }
+        }
+        return session;
+    }
+
+    private void install(CartSession session) {
+        sessions.put(session.userId, session);
+        if (session.cartId != null) {
+            userByCartId.put(session.cartId, session.userId);
+        }
+        session.lines.values().forEach(line -> userByLineId.put(line.getCartDetailID(), session.userId));
+    }
+
+    // Bỏ session khỏi bộ nhớ (gọi dưới lock của user)
+    private void discard(CartSession session) {
+        sessions.remove(session.userId);
+        dirtyUsers.remove(session.userId);
+        forget(session);
+        removals.incrementAndGet();
+    }
+
+    private Long userIdForCart(Long cartId) {
+        Long userId = userByCartId.get(cartId);
+        if (userId == null) {
+            userId = cartRepository.findById(cartId).map(Cart::getUserID).orElse(null);
+        }
+        return userId;
+    }
+
+    private boolean removeLine(CartSession session, Long courseId) {
+        CartLine removed = session.lines.remove(courseId);
+        if (removed == null) {
+            return false;
+        }
+        userByLineId.remove(removed.getCartDetailID());
+        markDirty(session);
+        return true;
+    }
+
+    private void markDirty(CartSession session) {
+        session.version = versions.incrementAndGet();
+        dirtyUsers.add(session.userId);
+    }
+
+    // Id của dòng mới được cấp từ sequence của CartDetails để client xóa được theo CartDetailID trước khi flush
+    private Long nextLineId() {
+        return nextLineIds(1).get(0);
+    }
+
+    private List<Long> nextLineIds(int count) {
+        return count <= 0 ? List.of() : jdbcTemplate.queryForList(NEXT_LINE_IDS_SQL, Long.class, count);
+    }
+
+    // Ghi theo từng stripe: mỗi nhóm user cùng stripe là một lô, ghi trong khi giữ flush lock của stripe đó
+    private boolean flushUsers(Collection<Long> userIds) {
+        Map<Integer, List<Long>> byStripe = new TreeMap<>();
+        for (Long userId : userIds) {
+            byStripe.computeIfAbsent(stripe(userId), key -> new ArrayList<>()).add(userId);
+        }
+        boolean allWritten = true;
+        for (Map.Entry<Integer, List<Long>> group : byStripe.entrySet()) {
+            ReentrantLock flushLock = flushLocks[group.getKey()];
+            flushLock.lock();
+            try {
+                allWritten &= flushStripe(group.getValue());
+            } finally {
+                flushLock.unlock();
+            }
+        }
+        return allWritten;
+    }
+
+    private boolean flushStripe(List<Long> userIds) {
+        List<PendingFlush> pending = new ArrayList<>();
+        for (Long userId : userIds) {
+            ReentrantLock lock = lockFor(userId);
+            lock.lock();
+            try {
+                CartSession session = sessions.get(userId);
+                if (session == null || session.version == session.flushedVersion) {
+                    continue;
+                }
+                if (session.cartId == null) {
+                    if (session.lines.isEmpty()) {
+                        // Chưa từng có cart trong DB, không có gì để ghi
+                        session.flushedVersion = session.version;
+                    } else {
+                        // Cart vừa bị CartReaper xóa, đang chờ dòng Carts mới: ghi ở lần flush sau
+                        dirtyUsers.add(userId);
+                    }
+                } else {
+                    pending.add(new PendingFlush(session));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (pending.isEmpty()) {
+            return true;
+        }
+        try {
+            writeAndMark(pending);
+            return true;
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            if (pending.size() == 1) {
+                recordFailure(pending.get(0), e);
+                return false;
+            }
+            // Một cart hỏng làm rollback cả lô: ghi lại từng cart trong transaction riêng để tách cart lỗi ra
+            log.warn("Cart flush failed for {} carts, retrying cart by cart: {}", pending.size(), e.getMessage());
+            boolean allWritten = true;
+            for (PendingFlush flush : pending) {
+                try {
+                    writeAndMark(List.of(flush));
+                } catch (RuntimeException cartError) {
+                    recordFailure(flush, cartError);
+                    allWritten = false;
+                }
+            }
+            return allWritten;
+        }
+    }
+
+    // Transaction riêng (REQUIRES_NEW), kể cả khi được gọi trong transaction của bên gọi: cart chỉ được đánh dấu
+    // đã ghi sau khi lô đã commit, không phụ thuộc việc transaction bên ngoài commit hay rollback
+    private void writeAndMark(List<PendingFlush> pending) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        flushTimer.record(() -> transaction.executeWithoutResult(status -> write(pending)));
+        flushedCarts.increment(pending.size());
+        for (PendingFlush flushed : pending) {
+            markFlushed(flushed);
+        }
+    }
+
+    // Cart lỗi được thử lại ở lần flush sau. Lỗi liên tiếp max-flush-attempts lần thì bỏ phần chưa ghi:
+    // session bị evict và lần truy cập sau nạp lại trạng thái đã có trong DB, để cart hỏng không bị thử lại mãi.
+    private void recordFailure(PendingFlush flush, RuntimeException e) {
+        ReentrantLock lock = lockFor(flush.userId);
+        lock.lock();
+        try {
+            CartSession session = sessions.get(flush.userId);
+            if (session == null) {
+                return;
+            }
+            session.failedFlushes++;
+            if (session.failedFlushes < maxFlushAttempts) {
+                dirtyUsers.add(flush.userId);
+                log.warn("Cart {} of user {} could not be flushed (attempt {}/{}), will retry: {}",
+                        flush.cartId, flush.userId, session.failedFlushes, maxFlushAttempts, e.getMessage());
+                return;
+            }
+            discard(session);
+            droppedCarts.increment();
+            log.error("Dropping unsaved changes of cart {} of user {} after {} failed flushes: {}",
+                    flush.cartId, flush.userId, session.failedFlushes, e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Ghi theo lô: một batch DELETE và một batch UPSERT cho tất cả cart cần flush
+    private void write(List<PendingFlush> pending) {
+        jdbcTemplate.batchUpdate(DELETE_REMOVED_LINES_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                PendingFlush flush = pending.get(i);
+                Long[] courseIds = flush.lines.stream().map(CartLine::getCourseID).toArray(Long[]::new);
+                ps.setLong(1, flush.cartId);
+                ps.setArray(2, ps.getConnection().createArrayOf("bigint", courseIds));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return pending.size();
+            }
+        });
+
+        List<Object[]> rows = new ArrayList<>();
+        for (PendingFlush flush : pending) {
+            for (CartLine line : flush.lines) {
+                rows.add(new Object[]{line.getCartDetailID(), flush.cartId, line.getCourseID(),
+                        line.getQuantity(), line.getPrice(), flush.cartId, line.getCourseID()});
+            }
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_LINE_SQL, rows);
+        }
+
+        // CreatedDate được dùng như thời điểm hoạt động cuối (CartReaper xóa theo cột này)
+        Long[] cartIds = pending.stream().map(flush -> flush.cartId).toArray(Long[]::new);
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(TOUCH_CARTS_SQL);
+            ps.setArray(1, connection.createArrayOf("bigint", cartIds));
+            return ps;
+        });
+    }
+
+    private void markFlushed(PendingFlush flushed) {
+        ReentrantLock lock = lockFor(flushed.userId);
+        lock.lock();
+        try {
+            CartSession session = sessions.get(flushed.userId);
+            if (session != null) {
+                session.flushedVersion = Math.max(session.flushedVersion, flushed.version);
+                session.failedFlushes = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Bỏ các giỏ hàng đã được ghi xuống DB và lâu không dùng
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMinutes * 60_000;
+        for (CartSession candidate : sessions.values()) {
+            if (candidate.lastAccess >= cutoff) {
+                continue;
+            }
+            ReentrantLock lock = lockFor(candidate.userId);
+            lock.lock();
+            try {
+                CartSession session = sessions.get(candidate.userId);
+                if (session != null && session.lastAccess < cutoff && session.version == session.flushedVersion
+                        && !session.checkingOut) {
+                    discard(session);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void forget(CartSession session) {
+        if (session.cartId != null) {
+            userByCartId.remove(session.cartId);
+        }
+        session.lines.values().forEach(line -> userByLineId.remove(line.getCartDetailID()));
+    }
+
+    private ReentrantLock lockFor(Long userId) {
+        return locks[stripe(userId)];
+    }
+
+    private static int stripe(Long userId) {
+        int hash = userId.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
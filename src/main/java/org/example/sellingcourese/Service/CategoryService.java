@@ -2,6 +2,7 @@ package org.example.sellingcourese.Service;
 
 import org.example.sellingcourese.Model.Category;
 import org.example.sellingcourese.repository.CategoryRepository;
+import org.example.sellingcourese.repository.CourseRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -14,6 +15,9 @@ public class CategoryService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private CourseRepository courseRepository;
+
     // 1. Lấy tất cả danh mục
     public List<Category> getAllCategories() {
         return categoryRepository.findAll();
@@ -38,7 +42,10 @@ public class CategoryService {
 
         Category category = existingCategory.get();
         category.setName(updatedCategory.getName());
-        return categoryRepository.save(category);
+        Category savedCategory = categoryRepository.save(category);
+        // Tên category là một phần của search_vector của các course thuộc category này
+        courseRepository.refreshSearchVectorByCategory(id);
+        return savedCategory;
     }
 
     // 4. Xóa danh mục
@@ -0,0 +1,97 @@
+package org.example.sellingcourese.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.example.sellingcourese.Model.Course;
+import org.example.sellingcourese.event.CourseChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+// Cache đọc-xuyên (read-through) cho Course, giới hạn theo kích thước và TTL.
+// Cache giữ bản sao tách khỏi persistence context (chỉ các cột, không có quan hệ lazy) và mỗi lần đọc trả về
+// một bản sao mới: bên gọi sửa hay save Course nhận được cũng không làm thay đổi dữ liệu trong cache.
+// Số liệu hit/miss/eviction có tại /actuator/metrics/cache.gets, cache.evictions (tag cache=courses|coursesByStatus)
+@Component
+public class CourseCache {
+    private static final Logger log = LoggerFactory.getLogger(CourseCache.class);
+
+    private final Cache<Long, Course> courses;
+    private final Cache<Integer, List<Course>> coursesByStatus;
+
+    public CourseCache(@Value("${course.cache.max-size:1000}") long maxSize,
+                       @Value("${course.cache.ttl-seconds:300}") long ttlSeconds,
+                       MeterRegistry meterRegistry) {
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        this.courses = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // Chỉ có vài status (0, 1, 2) nên danh sách theo status giữ rất ít entry
+        this.coursesByStatus = Caffeine.newBuilder()
+                .maximumSize(8)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, courses, "courses");
+        CaffeineCacheMetrics.monitor(meterRegistry, coursesByStatus, "coursesByStatus");
+    }
+
+    public Course getCourse(Long id, Function<Long, Course> loader) {
+        return copyOf(courses.get(id, key -> copyOf(loader.apply(key))));
+    }
+
+    public List<Course> getCoursesByStatus(Integer status, Function<Integer, List<Course>> loader) {
+        List<Course> cached = coursesByStatus.get(status,
+                key -> loader.apply(key).stream().map(CourseCache::copyOf).toList());
+        return cached.stream().map(CourseCache::copyOf).toList();
+    }
+
+    // Chạy sau khi transaction commit (hoặc ngay lập tức nếu không có transaction)
+    // để không nạp lại dữ liệu cũ vào cache trước khi thay đổi được ghi xuống DB
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCourseChanged(CourseChangedEvent event) {
+        if (event.getCourseId() != null) {
+            courses.invalidate(event.getCourseId());
+        }
+        if (event.getAffectedStatuses() != null) {
+            coursesByStatus.invalidateAll(event.getAffectedStatuses());
+        } else {
+            // Không biết status của course -> bỏ toàn bộ danh sách (chỉ vài entry)
+            coursesByStatus.invalidateAll();
+        }
+        log.debug("Invalidated course cache for course {} and statuses {}", event.getCourseId(), event.getAffectedStatuses());
+    }
+
+    // teacher/category/reviews không được copy: đều @JsonIgnore và là proxy lazy gắn với session đã đóng.
+    // Bản sao chỉ để đọc; cần sửa course thì nạp lại từ CourseRepository (merge bản sao sẽ làm mất reviews)
+    private static Course copyOf(Course source) {
+        Course copy = new Course();
+        copy.setId(source.getId());
+        copy.setTitle(source.getTitle());
+        copy.setDescription(source.getDescription());
+        copy.setThumbnailUrl(source.getThumbnailUrl());
+        copy.setPrice(source.getPrice());
+        copy.setTeacherId(source.getTeacherId());
+        copy.setCategoryId(source.getCategoryId());
+        copy.setVideoUrl(source.getVideoUrl());
+        copy.setThumbnailKey(source.getThumbnailKey());
+        copy.setVideoKey(source.getVideoKey());
+        copy.setHlsUrl(source.getHlsUrl());
+        copy.setStatus(source.getStatus());
+        copy.setCancelReason(source.getCancelReason());
+        copy.setMediaStatus(source.getMediaStatus());
+        copy.setMediaError(source.getMediaError());
+        copy.setDeletedAt(source.getDeletedAt());
+        return copy;
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.sellingcourese.Service;
+
+import org.example.sellingcourese.Request.CoursePageResponse;
+import org.example.sellingcourese.Request.CourseSummaryDTO;
+import org.example.sellingcourese.repository.CourseRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class CourseCatalogService {
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private CourseThumbnailService courseThumbnailService;
+
+    // Các kiểu sắp xếp được hỗ trợ, luôn kèm id để thứ tự là duy nhất
+    public enum CatalogSort {
+        ID, PRICE, TITLE;
+
+        public static CatalogSort from(String value) {
+            if (value == null || value.isBlank()) {
+                return ID;
+            }
+            try {
+                return CatalogSort.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported sort: " + value);
+            }
+        }
+    }
+
+    // Lấy một trang catalog theo keyset, thời gian truy vấn không phụ thuộc độ sâu trang
+    @Transactional(readOnly = true)
+    public CoursePageResponse getCatalogPage(String sort, Integer status, String cursor, Integer size) {
+        CatalogSort catalogSort = CatalogSort.from(sort);
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // Lấy dư một dòng để biết còn trang sau hay không
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+
+        String[] position = cursor == null || cursor.isBlank() ? null : decodeCursor(cursor, catalogSort);
+        List<CourseSummaryDTO> rows = switch (catalogSort) {
+            case ID -> courseRepository.findSummariesAfterId(status,
+                    position == null ? 0L : Long.valueOf(position[1]), limit);
+            case PRICE -> position == null
+                    ? courseRepository.findSummariesOrderByPrice(status, limit)
+                    : courseRepository.findSummariesAfterPrice(status, new BigDecimal(position[2]),
+                    Long.valueOf(position[1]), limit);
+            case TITLE -> position == null
+                    ? courseRepository.findSummariesOrderByTitle(status, limit)
+                    : courseRepository.findSummariesAfterTitle(status, position[2],
+                    Long.valueOf(position[1]), limit);
+        };
+
+        boolean hasMore = rows.size() > pageSize;
+        List<CourseSummaryDTO> items = hasMore ? rows.subList(0, pageSize) : rows;
+        attachThumbnails(items);
+        String nextCursor = hasMore ? encodeCursor(catalogSort, items.get(items.size() - 1)) : null;
+        return new CoursePageResponse(items, nextCursor, hasMore);
+    }
+
+    private void attachThumbnails(List<CourseSummaryDTO> items) {
+        Map<Long, Map<Integer, String>> thumbnails = courseThumbnailService.findUrlsByCourseIds(
+                items.stream().map(CourseSummaryDTO::getId).toList());
+        for (CourseSummaryDTO item : items) {
+            item.setThumbnails(thumbnails.getOrDefault(item.getId(), Map.of()));
+        }
+    }
+
+    // Cursor dạng "SORT|lastId|lastKey" được mã hóa base64url để client không phụ thuộc định dạng
+    private String encodeCursor(CatalogSort sort, CourseSummaryDTO last) {
+        String key = switch (sort) {
+            case ID -> "";
+            case PRICE -> last.getPrice().toPlainString();
+            case TITLE -> last.getTitle();
+        };
+        String raw = sort.name() + "|" + last.getId() + "|" + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor, CatalogSort expectedSort) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3);
+            if (parts.length != 3 || !expectedSort.name().equals(parts[0])) {
+                throw new IllegalArgumentException("Cursor does not match sort " + expectedSort);
+            }
+            Long.parseLong(parts[1]);
+            if (expectedSort == CatalogSort.PRICE) {
+                new BigDecimal(parts[2]);
+            }
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", e);
+        }
+    }
+}
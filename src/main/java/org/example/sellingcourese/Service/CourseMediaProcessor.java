@@ -0,0 +1,318 @@
+package org.example.sellingcourese.Service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.example.sellingcourese.Model.MediaStatus;
+import org.example.sellingcourese.event.CourseChangedEvent;
+import org.example.sellingcourese.repository.CourseRepository;
+import org.example.sellingcourese.storage.MediaStorage;
+import org.example.sellingcourese.storage.StoredMedia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Xử lý upload media của course ở background: course được lưu ngay với mediaStatus = PROCESSING,
+// thumbnail và video được upload song song trên một worker pool giới hạn, có retry + backoff.
+// Số job nhận vào bị giới hạn (jobSlots): hết chỗ thì request nhận 503 trước khi course được lưu.
+@Service
+public class CourseMediaProcessor {
+    private static final Logger log = LoggerFactory.getLogger(CourseMediaProcessor.class);
+
+    @Autowired
+    private MediaStorage mediaStorage;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private HlsPackager hlsPackager;
+
+    @Autowired
+    private CourseThumbnailService courseThumbnailService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${media.worker.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${media.worker.initial-backoff-ms:2000}")
+    private long initialBackoffMs;
+
+    @Value("${media.worker.stale-after-minutes:30}")
+    private long staleAfterMinutes;
+
+    private final ThreadPoolExecutor executor;
+    // Mỗi course đang xử lý giữ một chỗ từ reserve() đến khi job kết thúc (kể cả bước HLS)
+    private final Semaphore jobSlots;
+
+    public CourseMediaProcessor(@Value("${media.worker.pool-size:4}") int poolSize,
+                                @Value("${media.worker.queue-capacity:100}") int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.jobSlots = new Semaphore(poolSize + queueCapacity);
+        // Số task trong hàng đợi đã bị chặn bởi jobSlots (tối đa 3 task mỗi job) nên executor không tự từ chối
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "media-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // File đã được chuyển từ multipart sang file tạm do job sở hữu
+    @Getter
+    @AllArgsConstructor
+    public static class StagedMedia {
+        private final Path path;
+        private final String fileName;
+        private final String mimeType;
+        private final long size;
+    }
+
+    // Multipart bị xóa khi request kết thúc nên phải chuyển sang file tạm trước khi trả response
+    public StagedMedia stage(MultipartFile multipartFile, String defaultMimeType) {
+        if (multipartFile == null || multipartFile.isEmpty()) {
+            return null;
+        }
+        String originalFilename = multipartFile.getOriginalFilename();
+        String fileName = originalFilename != null ? originalFilename : "file";
+        try {
+            Path tempFile = Files.createTempFile("media-", extensionOf(fileName));
+            multipartFile.transferTo(tempFile);
+            return new StagedMedia(tempFile, fileName, detectMimeType(fileName, defaultMimeType), multipartFile.getSize());
+        } catch (IOException e) {
+            log.error("Failed to stage uploaded file {}: {}", fileName, e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to process file", e);
+        }
+    }
+
+    // Giữ chỗ cho một job trước khi lưu course. Hết chỗ thì xóa file tạm và trả 503 để client thử lại sau,
+    // thay vì chạy upload trên thread của request
+    public void reserve(StagedMedia... staged) {
+        if (!jobSlots.tryAcquire()) {
+            for (StagedMedia media : staged) {
+                deleteQuietly(media);
+            }
+            log.warn("Media queue is full, rejecting upload");
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Media processing is busy, please retry later");
+        }
+    }
+
+    // Trả chỗ đã giữ khi course không được lưu (job không được submit)
+    public void release(StagedMedia... staged) {
+        for (StagedMedia media : staged) {
+            deleteQuietly(media);
+        }
+        jobSlots.release();
+    }
+
+    // Đưa job upload vào hàng đợi (đã reserve); kết quả được ghi vào Courses khi cả hai upload kết thúc
+    public void submit(Long courseId, StagedMedia thumbnail, StagedMedia video) {
+        CompletableFuture<StoredMedia> thumbnailUpload = uploadAsync(courseId, "thumbnail", thumbnail);
+        CompletableFuture<StoredMedia> videoUpload = uploadAsync(courseId, "video", video);
+
+        // Một upload lỗi: xóa file bên kia đã lưu xong, course không tham chiếu tới file đó
+        CompletableFuture<Void> uploaded = CompletableFuture.allOf(thumbnailUpload, videoUpload)
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        deleteStoredQuietly(thumbnailUpload);
+                        deleteStoredQuietly(videoUpload);
+                    }
+                });
+
+        // Thumbnail nhỏ chỉ được tạo khi cả hai upload thành công, để lỗi video không để lại bản resize mồ côi
+        CompletableFuture<Long> ready = uploaded.thenApply(ignored -> {
+            StoredMedia storedThumbnail = thumbnailUpload.join();
+            StoredMedia storedVideo = videoUpload.join();
+            generateThumbnails(courseId, storedThumbnail, thumbnail);
+            courseRepository.updateMedia(courseId,
+                    storedThumbnail != null ? storedThumbnail.getUrl() : null,
+                    storedThumbnail != null ? storedThumbnail.getKey() : null,
+                    storedVideo != null ? storedVideo.getUrl() : null,
+                    storedVideo != null ? storedVideo.getKey() : null,
+                    MediaStatus.READY, null);
+            log.info("Media for course {} is ready", courseId);
+            return courseId;
+        });
+
+        ready.whenComplete((id, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                log.error("Media processing failed for course {}: {}", courseId, cause.getMessage(), cause);
+                courseRepository.updateMedia(courseId, null, null, null, null, MediaStatus.FAILED, cause.getMessage());
+            }
+            eventPublisher.publishEvent(new CourseChangedEvent(courseId, null));
+        });
+
+        // Sau khi MP4 đã phát được, cắt HLS từ cùng file tạm rồi mới xóa file tạm
+        ready.thenRunAsync(() -> packageHls(courseId, video, videoUpload.join()), executor)
+                .whenComplete((result, error) -> {
+                    deleteQuietly(thumbnail);
+                    deleteQuietly(video);
+                    jobSlots.release();
+                });
+    }
+
+    // Lỗi resize không làm course FAILED: danh sách vẫn hiển thị được ảnh gốc
+    private void generateThumbnails(Long courseId, StoredMedia original, StagedMedia thumbnail) {
+        if (original == null) {
+            return;
+        }
+        try {
+            courseThumbnailService.replace(courseId,
+                    courseThumbnailService.generate(courseId, original, thumbnail.getPath()));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Thumbnail derivatives failed for course {}: {}", courseId, e.getMessage(), e);
+        }
+    }
+
+    // Lỗi HLS không làm course FAILED: client vẫn dùng được videoUrl
+    private void packageHls(Long courseId, StagedMedia video, StoredMedia storedVideo) {
+        if (video == null || storedVideo == null || !hlsPackager.isAvailable()) {
+            return;
+        }
+        try {
+            StoredMedia master = hlsPackager.packageVideo(courseId, video.getPath());
+            if (master == null) {
+                return;
+            }
+            if (courseRepository.updateHlsUrl(courseId, storedVideo.getKey(), master.getUrl()) > 0) {
+                eventPublisher.publishEvent(new CourseChangedEvent(courseId, null));
+            } else {
+                log.info("HLS for course {} discarded: video {} was replaced while packaging", courseId, storedVideo.getKey());
+            }
+        } catch (IOException e) {
+            log.warn("HLS packaging failed for course {}: {}", courseId, e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("HLS packaging interrupted for course {}", courseId);
+        }
+    }
+
+    private CompletableFuture<StoredMedia> uploadAsync(Long courseId, String kind, StagedMedia media) {
+        if (media == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // Key duy nhất cho mỗi lần upload, ví dụ courses/12/video/3f2a...-intro.mp4
+        String key = "courses/" + courseId + "/" + kind + "/" + UUID.randomUUID() + extensionOf(media.getFileName());
+        // File tạm được xóa ở cuối submit, sau bước HLS
+        return CompletableFuture.supplyAsync(() -> uploadWithRetry(courseId, key, media), executor);
+    }
+
+    private StoredMedia uploadWithRetry(Long courseId, String key, StagedMedia media) {
+        long backoff = initialBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try (InputStream inputStream = Files.newInputStream(media.getPath())) {
+                return mediaStorage.store(key, media.getMimeType(), media.getSize(), inputStream);
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw new CompletionException(e);
+                }
+                log.warn("Upload of {} for course {} failed (attempt {}/{}), retrying in {} ms: {}",
+                        media.getFileName(), courseId, attempt, maxAttempts, backoff, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(interrupted);
+                }
+                backoff *= 2;
+            }
+        }
+    }
+
+    private String detectMimeType(String fileName, String defaultMimeType) {
+        String lowerName = fileName.toLowerCase();
+        if (lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg")) {
+            return "image/jpeg";
+        } else if (lowerName.endsWith(".png")) {
+            return "image/png";
+        } else if (lowerName.endsWith(".mp4")) {
+            return "video/mp4";
+        }
+        return defaultMimeType;
+    }
+
+    private String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String extension = dot >= 0 ? fileName.substring(dot) : "";
+        // Chỉ giữ phần mở rộng đơn giản, tránh ký tự đường dẫn trong tên file tạm
+        return extension.matches("\\.[A-Za-z0-9]{1,10}") ? extension : ".tmp";
+    }
+
+    private void deleteStoredQuietly(CompletableFuture<StoredMedia> upload) {
+        if (upload.isCompletedExceptionally()) {
+            return;
+        }
+        StoredMedia stored = upload.getNow(null);
+        if (stored == null) {
+            return;
+        }
+        try {
+            mediaStorage.delete(stored.getKey());
+            log.info("Deleted orphaned upload {}", stored.getKey());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Orphaned upload {} could not be deleted: {}", stored.getKey(), e.getMessage());
+        }
+    }
+
+    private void deleteQuietly(StagedMedia media) {
+        if (media == null) {
+            return;
+        }
+        Path path = media.getPath();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Temporary file could not be deleted: {}", path);
+        }
+    }
+
+    // Job chỉ nằm trong bộ nhớ và file tạm không còn sau khi server tắt/crash nên không thể đưa lại vào hàng đợi:
+    // course còn PROCESSING được chuyển FAILED để giáo viên upload lại. Chỉ lấy job đủ cũ để không đụng tới
+    // job đang chạy trên instance khác
+    @EventListener(ApplicationReadyEvent.class)
+    public void failStaleJobs() {
+        LocalDateTime before = LocalDateTime.now().minusMinutes(staleAfterMinutes);
+        int failed = courseRepository.failStaleMedia(MediaStatus.PROCESSING, MediaStatus.FAILED, before,
+                "Media processing was interrupted, please upload again");
+        if (failed > 0) {
+            log.warn("Marked {} courses stuck in PROCESSING as FAILED", failed);
+            eventPublisher.publishEvent(new CourseChangedEvent(null, null));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+            log.warn("Media workers did not finish within 60s, pending uploads will be failed on next startup");
+            executor.shutdownNow();
+        }
+    }
+}
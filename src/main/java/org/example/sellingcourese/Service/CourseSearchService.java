@@ -0,0 +1,55 @@
+package org.example.sellingcourese.Service;
+
+import org.example.sellingcourese.Request.CourseSearchResult;
+import org.example.sellingcourese.repository.CourseRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+@Service
+public class CourseSearchService {
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+    private static final int MAX_TERMS = 8;
+    // Courses.price là numeric(10, 2)
+    private static final BigDecimal MAX_PRICE = new BigDecimal("99999999.99");
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    // Tìm kiếm full-text có xếp hạng trên title, description và tên category.
+    // Mỗi từ được so khớp theo tiền tố để dùng cho typeahead ("reac" khớp "react").
+    public List<CourseSearchResult> search(String keyword, BigDecimal minPrice, BigDecimal maxPrice,
+                                           Integer status, Integer limit) {
+        String tsQuery = toPrefixTsQuery(keyword);
+        if (tsQuery.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int pageSize = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT));
+        return courseRepository.searchRanked(
+                tsQuery,
+                status == null ? -1 : status,
+                minPrice == null ? BigDecimal.ZERO : minPrice,
+                maxPrice == null ? MAX_PRICE : maxPrice,
+                pageSize);
+    }
+
+    // "Spring boot" -> "spring:* & boot:*"; chỉ giữ chữ và số nên không thể chèn cú pháp tsquery
+    private String toPrefixTsQuery(String keyword) {
+        if (keyword == null) {
+            return "";
+        }
+        List<String> terms = new ArrayList<>();
+        for (String token : keyword.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty() && terms.size() < MAX_TERMS) {
+                terms.add(token + ":*");
+            }
+        }
+        return String.join(" & ", terms);
+    }
+}
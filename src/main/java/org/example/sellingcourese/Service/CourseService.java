@@ -1,45 +1,34 @@
 
 package org.example.sellingcourese.Service;
 
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.FileContent;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.gson.GsonFactory;
-import com.google.api.services.drive.Drive;
-import com.google.api.services.drive.DriveScopes;
 import org.example.sellingcourese.Model.Course;
+import org.example.sellingcourese.Model.MediaStatus;
+import org.example.sellingcourese.event.CourseChangedEvent;
 import org.example.sellingcourese.repository.CartDetailRepository;
 import org.example.sellingcourese.repository.CourseRepository;
 import org.example.sellingcourese.repository.OrderDetailRepository;
+import org.example.sellingcourese.repository.ReviewRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
 
-import java.io.*;
 import java.math.BigDecimal;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.security.GeneralSecurityException;
-import java.util.Collections;
+import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 @Service
 public class CourseService {
     private static final Logger log = LoggerFactory.getLogger(CourseService.class);
-    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
-    private static final String FOLDER_ID = "1SarwgB_52SplTKxlmCvL-ilBwMOKR5Ta"; // Correct Folder ID
-    private static final String CREDENTIALS_FILE_PATH = "D:\\Project\\Nam4_hk1\\SellingCourese\\res.json";
 
     @Autowired
     private CourseRepository courseRepository;
@@ -49,155 +38,42 @@ public class CourseService {
 
     @Autowired
     private OrderDetailRepository orderItemRepository;
-    // Get all courses
-    public List<Course> getAllCourses() {
-        return courseRepository.findAll();
-    }
-    // Helper method to get Google credentials path
-//    private String getPathToGoogleCredentials() {
-//        try {
-//            String currentDirectory = System.getProperty("user.dir");
-//            Path filePath = Paths.get(currentDirectory, CREDENTIALS_FILE_PATH);
-//            return filePath.toString();
-//        } catch (Exception e) {
-//            log.error("Failed to resolve Google credentials path: {}", e.getMessage(), e);
-//            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error resolving credentials path", e);
-//        }
-//    }
-    public String getPathToGoogleCredentials() {
-        try {
-            Resource resource = new ClassPathResource("res.json");
-
-            // Kiểm tra xem file có tồn tại không
-            if (!resource.exists()) {
-                throw new FileNotFoundException("File res.json not found in classpath");
-            }
-
-            // Nếu chạy trong JAR, sử dụng InputStream
-            if (resource.isFile()) {
-                return resource.getFile().getAbsolutePath();
-            } else {
-                // Tạo một file tạm thời và sao chép nội dung
-                File tempFile = File.createTempFile("res", ".json");
-                try (InputStream inputStream = resource.getInputStream()) {
-                    Files.copy(inputStream, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                }
-                return tempFile.getAbsolutePath();
-            }
-        } catch (IOException e) {
-            log.error("Failed to resolve Google credentials path: {}", e.getMessage(), e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error resolving credentials path", e);
-        }
-    }
-
-    // Create Google Drive service
-    private Drive createDriveService() {
-        try {
-            String credentialsPath = getPathToGoogleCredentials();
-            GoogleCredential credential = GoogleCredential.fromStream(new FileInputStream(credentialsPath))
-                    .createScoped(Collections.singleton(DriveScopes.DRIVE));
-
-            return new Drive.Builder(
-                    GoogleNetHttpTransport.newTrustedTransport(),
-                    JSON_FACTORY,
-                    credential
-            ).setApplicationName("SellingCourse").build();
-        } catch (IOException e) {
-            log.error("Failed to create Google Drive service due to IO error: {}", e.getMessage(), e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create Google Drive service", e);
-        } catch (GeneralSecurityException e) {
-            log.error("Security error while creating Google Drive service: {}", e.getMessage(), e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Security error during Google Drive initialization", e);
-        }
-    }
 
-    // Upload file to Google Drive
-    private String uploadFileToDrive(File file, String mimeType) {
-        try {
-            Drive driveService = createDriveService();
-
-            // Create file metadata
-            com.google.api.services.drive.model.File fileMetadata = new com.google.api.services.drive.model.File();
-            fileMetadata.setName(file.getName());
-            fileMetadata.setParents(Collections.singletonList(FOLDER_ID));
-
-            // Create file content
-            FileContent mediaContent = new FileContent(mimeType, file);
-
-            // Upload file
-            com.google.api.services.drive.model.File uploadedFile = driveService.files()
-                    .create(fileMetadata, mediaContent)
-                    .setFields("id, webContentLink")
-                    .execute();
-
-            // Make the file publicly accessible
-            com.google.api.services.drive.model.Permission permission = new com.google.api.services.drive.model.Permission()
-                    .setType("anyone")
-                    .setRole("reader");
-
-            driveService.permissions().create(uploadedFile.getId(), permission).execute();
-
-            log.info("File uploaded successfully: {}", uploadedFile.getWebContentLink());
-            return "https://drive.google.com/uc?export=view&id=" + uploadedFile.getId();
-        } catch (IOException e) {
-            log.error("IO error during file upload: {}", e.getMessage(), e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "File upload failed due to IO error", e);
-        } catch (Exception e) {
-            log.error("Unexpected error during file upload: {}", e.getMessage(), e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Unexpected error during file upload", e);
-        }
-    }
+    @Autowired
+    private CourseCache courseCache;
 
-    // Save MultipartFile to Drive
-    private String saveMultipartFileToDrive(MultipartFile multipartFile, String mimeType) {
-        if (multipartFile == null || multipartFile.isEmpty()) {
-            log.warn("Attempted to upload an empty file");
-            return null;
-        }
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
-        try {
-            // Create temporary file
-            String originalFilename = multipartFile.getOriginalFilename();
-            File tempFile = File.createTempFile("upload-", "-" + (originalFilename != null ? originalFilename : "file"));
+    @Autowired
+    private CourseMediaProcessor courseMediaProcessor;
 
-            // Write content to temp file
-            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-                fos.write(multipartFile.getBytes());
-            }
+    @Autowired
+    private CourseThumbnailService courseThumbnailService;
 
-            // Determine correct MIME type
-            String actualMimeType = mimeType;
-            if (originalFilename != null) {
-                if (originalFilename.toLowerCase().endsWith(".jpg") || originalFilename.toLowerCase().endsWith(".jpeg")) {
-                    actualMimeType = "image/jpeg";
-                } else if (originalFilename.toLowerCase().endsWith(".png")) {
-                    actualMimeType = "image/png";
-                } else if (originalFilename.toLowerCase().endsWith(".mp4")) {
-                    actualMimeType = "video/mp4";
-                }
-            }
+    @Autowired
+    private ReviewRepository reviewRepository;
 
-            // Upload file
-            String fileUrl = uploadFileToDrive(tempFile, actualMimeType);
+    @Autowired
+    private CartSessionStore cartSessionStore;
 
-            // Delete temp file
-            if (!tempFile.delete()) {
-                log.warn("Temporary file could not be deleted: {}", tempFile.getAbsolutePath());
-            }
+    @Value("${bulk.delete.chunk-size:1000}")
+    private int deleteChunkSize;
 
-            return fileUrl;
-        } catch (IOException e) {
-            log.error("Failed to save MultipartFile: {}", e.getMessage(), e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to process file", e);
-        }
+    @Value("${bulk.delete.resume-after-minutes:10}")
+    private long resumeAfterMinutes;
+    // Get all courses
+    public List<Course> getAllCourses() {
+        return courseRepository.findAll();
     }
-
     // Add course with files
     public Course addCourseWithFiles(String title, String description, BigDecimal price, Long teacherId, Long categoryId,
                                      MultipartFile thumbnail, MultipartFile video) {
         try {
-            String thumbnailUrl = saveMultipartFileToDrive(thumbnail, "image/jpeg");
-            String videoUrl = saveMultipartFileToDrive(video, "video/mp4");
+            // Chỉ chuyển file sang thư mục tạm, việc upload chạy ở background
+            CourseMediaProcessor.StagedMedia stagedThumbnail = courseMediaProcessor.stage(thumbnail, "image/jpeg");
+            CourseMediaProcessor.StagedMedia stagedVideo = courseMediaProcessor.stage(video, "video/mp4");
+            boolean hasMedia = stagedThumbnail != null || stagedVideo != null;
 
             Course course = new Course();
             course.setTitle(title);
@@ -205,11 +81,29 @@ public class CourseService {
             course.setPrice(price);
             course.setTeacherId(teacherId);
             course.setCategoryId(categoryId);
-            course.setThumbnailUrl(thumbnailUrl);
-            course.setVideoUrl(videoUrl);
             course.setStatus(1);
+            course.setMediaStatus(hasMedia ? MediaStatus.PROCESSING : MediaStatus.READY);
+            course.setMediaRequestedAt(hasMedia ? LocalDateTime.now() : null);
 
-            return courseRepository.save(course);
+            // Hàng đợi media đầy thì trả 503 trước khi lưu, không để lại course PROCESSING
+            if (hasMedia) {
+                courseMediaProcessor.reserve(stagedThumbnail, stagedVideo);
+            }
+            Course savedCourse;
+            try {
+                savedCourse = courseRepository.save(course);
+                courseRepository.refreshSearchVector(savedCourse.getId());
+            } catch (RuntimeException e) {
+                if (hasMedia) {
+                    courseMediaProcessor.release(stagedThumbnail, stagedVideo);
+                }
+                throw e;
+            }
+            publishCourseChanged(savedCourse.getId(), savedCourse.getStatus());
+            if (hasMedia) {
+                courseMediaProcessor.submit(savedCourse.getId(), stagedThumbnail, stagedVideo);
+            }
+            return savedCourse;
         } catch (ResponseStatusException e) {
             log.error("Error while adding course: {}", e.getMessage(), e);
             throw e;
@@ -230,50 +124,111 @@ public class CourseService {
             course.setTeacherId(teacherId);
             course.setCategoryId(categoryId);
 
-            if (thumbnail != null && !thumbnail.isEmpty()) {
-                course.setThumbnailUrl(saveMultipartFileToDrive(thumbnail, "image/jpeg"));
+            // File mới (nếu có) được upload ở background, URL cũ được giữ cho đến khi upload xong
+            CourseMediaProcessor.StagedMedia stagedThumbnail = courseMediaProcessor.stage(thumbnail, "image/jpeg");
+            CourseMediaProcessor.StagedMedia stagedVideo = courseMediaProcessor.stage(video, "video/mp4");
+            boolean hasMedia = stagedThumbnail != null || stagedVideo != null;
+            if (hasMedia) {
+                courseMediaProcessor.reserve(stagedThumbnail, stagedVideo);
+                course.setMediaStatus(MediaStatus.PROCESSING);
+                course.setMediaError(null);
+                course.setMediaRequestedAt(LocalDateTime.now());
             }
 
-            if (video != null && !video.isEmpty()) {
-                course.setVideoUrl(saveMultipartFileToDrive(video, "video/mp4"));
+            Course savedCourse;
+            try {
+                savedCourse = courseRepository.save(course);
+                courseRepository.refreshSearchVector(id);
+            } catch (RuntimeException e) {
+                if (hasMedia) {
+                    courseMediaProcessor.release(stagedThumbnail, stagedVideo);
+                }
+                throw e;
             }
-
-            return courseRepository.save(course);
+            publishCourseChanged(id, savedCourse.getStatus());
+            if (hasMedia) {
+                courseMediaProcessor.submit(id, stagedThumbnail, stagedVideo);
+            }
+            return savedCourse;
         } else {
             throw new RuntimeException("Course not found with ID: " + id);
         }
     }
 
-    @Transactional
+    // Course phổ biến có thể có hàng nghìn dòng liên quan: xóa theo lô, mỗi lô một transaction ngắn.
+    // Course được đánh dấu deleted_at trước tiên nên giỏ hàng/đơn mới không nhận course này nữa trong lúc xóa.
+    // Nếu bị ngắt giữa chừng, gọi lại deleteCourse hoặc resumePendingDeletes sẽ xóa tiếp phần còn lại.
     public void deleteCourse(Long id) {
-        if (!courseRepository.existsById(id)) {
-            throw new RuntimeException("Course not found with ID: " + id);
+        Course existingCourse = courseRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Course not found with ID: " + id));
+        courseRepository.markDeleted(id, LocalDateTime.now());
+        // Bỏ course khỏi cache ngay khi đánh dấu, không chờ xóa xong
+        publishCourseChanged(id, existingCourse.getStatus());
+        purgeCourse(id);
+        publishCourseChanged(id, existingCourse.getStatus());
+    }
+
+    // Xóa tiếp các course đã đánh dấu nhưng chưa xóa xong (ví dụ server tắt giữa lúc xóa)
+    @Scheduled(fixedDelayString = "${bulk.delete.resume-interval-ms:600000}",
+            initialDelayString = "${bulk.delete.resume-initial-delay-ms:60000}")
+    public void resumePendingDeletes() {
+        // Chỉ lấy course đã đánh dấu đủ lâu để không chạy chồng lên một lần xóa đang diễn ra
+        LocalDateTime before = LocalDateTime.now().minusMinutes(resumeAfterMinutes);
+        for (Long id : courseRepository.findIdsMarkedDeletedBefore(before)) {
+            try {
+                purgeCourse(id);
+                eventPublisher.publishEvent(new CourseChangedEvent(id, null));
+            } catch (RuntimeException e) {
+                log.warn("Resuming delete of course {} failed, will retry: {}", id, e.getMessage(), e);
+            }
         }
+    }
+
+    // Mỗi bước đều idempotent nên chạy lại từ đầu sau khi bị ngắt là an toàn
+    private void purgeCourse(Long id) {
+        // Bỏ course khỏi các giỏ hàng đang nằm trong bộ nhớ (course đã bị đánh dấu nên không thể được thêm lại)
+        cartSessionStore.dropCourse(id);
 
-        // Xóa các CartDetails liên quan đến Course
-        cartDetailRepository.deleteByCourseID(id);
+        // Xóa các CartDetails, OrderItems và Reviews liên quan đến Course
+        int cartLines = deleteInChunks(limit -> cartDetailRepository.deleteChunkByCourseID(id, limit));
+        int orderItems = deleteInChunks(limit -> orderItemRepository.deleteChunkByCourseId(id, limit));
+        int reviews = deleteInChunks(limit -> reviewRepository.deleteChunkByCourseId(id, limit));
 
-        // Xóa các OrderItems liên quan đến Course
-        orderItemRepository.deleteByCourseId(id);
+        // Xóa các bản thumbnail đã resize
+        courseThumbnailService.deleteByCourseId(id);
 
         // Cuối cùng, xóa Course
-        courseRepository.deleteById(id);
+        courseRepository.deleteCourseById(id);
+        log.info("Deleted course {} with {} cart lines, {} order items and {} reviews", id, cartLines, orderItems, reviews);
+    }
+
+    private int deleteInChunks(IntUnaryOperator deleteChunk) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = deleteChunk.applyAsInt(deleteChunkSize);
+            total += deleted;
+        } while (deleted >= deleteChunkSize);
+        return total;
     }
 
     // Get course by ID
     public Course getCourseById(Long id) {
-        return courseRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Course not found with ID: " + id));
+        return courseCache.getCourse(id, key -> courseRepository.findById(key)
+                .orElseThrow(() -> new RuntimeException("Course not found with ID: " + key)));
     }
 
     // Find courses by title
     public List<Course> findCoursesByTitle(String title) {
-        return courseRepository.findByTitleContainingIgnoreCase(title);
+        return courseRepository.findByTitleContainingIgnoreCaseAndDeletedAtIsNull(title);
     }
 
     // Get courses by status
     public List<Course> getCoursesByStatus(Integer status) {
-        return courseRepository.findByStatus(status);
+        if (status == null) {
+            return courseRepository.findByStatusAndDeletedAtIsNull(null);
+        }
+        return courseCache.getCoursesByStatus(status, courseRepository::findByStatusAndDeletedAtIsNull);
     }
 
     // Update course status
@@ -281,8 +236,11 @@ public class CourseService {
         Optional<Course> optionalCourse = courseRepository.findById(id);
         if (optionalCourse.isPresent()) {
             Course course = optionalCourse.get();
+            Integer oldStatus = course.getStatus();
             course.setStatus(status);
-            return courseRepository.save(course);
+            Course savedCourse = courseRepository.save(course);
+            publishCourseChanged(id, oldStatus, status);
+            return savedCourse;
         } else {
             throw new RuntimeException("Course not found with ID: " + id);
         }
@@ -292,14 +250,28 @@ public class CourseService {
         Optional<Course> optionalCourse = courseRepository.findById(id);
         if (optionalCourse.isPresent()) {
             Course course = optionalCourse.get();
+            Integer oldStatus = course.getStatus();
             course.setStatus(status);
             course.setCancelReason(cancelReason);
-            return courseRepository.save(course);
+            Course savedCourse = courseRepository.save(course);
+            publishCourseChanged(id, oldStatus, status);
+            return savedCourse;
         } else {
             throw new RuntimeException("Course not found with ID: " + id);
         }
     }
 
+    // Báo cho CourseCache biết course và các danh sách theo status cần invalidate
+    private void publishCourseChanged(Long courseId, Integer... statuses) {
+        Set<Integer> affectedStatuses = new HashSet<>();
+        for (Integer status : statuses) {
+            if (status != null) {
+                affectedStatuses.add(status);
+            }
+        }
+        eventPublisher.publishEvent(new CourseChangedEvent(courseId, affectedStatuses));
+    }
+
 
 
 
@@ -0,0 +1,232 @@
+package org.example.sellingcourese.Service;
+
+import org.example.sellingcourese.Model.CourseThumbnail;
+import org.example.sellingcourese.repository.CourseThumbnailRepository;
+import org.example.sellingcourese.storage.MediaStorage;
+import org.example.sellingcourese.storage.StoredMedia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Tạo các bản thumbnail nhỏ (JPEG, nhiều chiều rộng) từ ảnh gốc để trang danh sách không phải tải ảnh gốc.
+// Chỉ JPEG, không có WebP: ImageIO của JDK không có WebP writer và các encoder WebP cho Java đều cần thư viện native
+// theo từng nền tảng; thu nhỏ kích thước đã giảm phần lớn dung lượng so với ảnh gốc.
+@Service
+public class CourseThumbnailService {
+    private static final Logger log = LoggerFactory.getLogger(CourseThumbnailService.class);
+
+    @Autowired
+    private CourseThumbnailRepository courseThumbnailRepository;
+
+    @Autowired
+    private MediaStorage mediaStorage;
+
+    @Value("${media.thumbnail.widths:160,320,640}")
+    private int[] widths;
+
+    @Value("${media.thumbnail.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    // Resize và lưu các bản thumbnail cạnh ảnh gốc, ví dụ courses/1/thumbnail/<uuid>-w320.jpg.
+    // Lỗi ở một kích thước thì xóa các bản đã lưu trước đó
+    public List<CourseThumbnail> generate(Long courseId, StoredMedia original, Path source) throws IOException {
+        int[] targetWidths = Arrays.stream(widths).filter(width -> width > 0).sorted().distinct().toArray();
+        if (targetWidths.length == 0) {
+            return List.of();
+        }
+        BufferedImage image = readSubsampled(source, targetWidths[targetWidths.length - 1]);
+        if (image == null) {
+            throw new IOException("Unsupported image format for course " + courseId);
+        }
+
+        String baseKey = stripExtension(original.getKey());
+        List<CourseThumbnail> thumbnails = new ArrayList<>();
+        try {
+            storeSizes(courseId, baseKey, image, targetWidths, thumbnails);
+        } catch (IOException | RuntimeException e) {
+            deleteFiles(thumbnails, "Partial thumbnail");
+            throw e;
+        }
+        return thumbnails;
+    }
+
+    private void storeSizes(Long courseId, String baseKey, BufferedImage image, int[] targetWidths,
+                            List<CourseThumbnail> thumbnails) throws IOException {
+        for (int width : targetWidths) {
+            // Không phóng to: ảnh gốc nhỏ hơn thì chỉ tạo một bản ở kích thước gốc
+            int targetWidth = Math.min(width, image.getWidth());
+            if (!thumbnails.isEmpty() && thumbnails.get(thumbnails.size() - 1).getWidth() >= targetWidth) {
+                break;
+            }
+            int targetHeight = Math.max(1, (int) Math.round((double) image.getHeight() * targetWidth / image.getWidth()));
+            byte[] jpeg = encodeJpeg(resize(image, targetWidth, targetHeight));
+
+            String key = baseKey + "-w" + targetWidth + ".jpg";
+            StoredMedia stored;
+            try (InputStream inputStream = new ByteArrayInputStream(jpeg)) {
+                stored = mediaStorage.store(key, "image/jpeg", jpeg.length, inputStream);
+            }
+            thumbnails.add(new CourseThumbnail(null, courseId, targetWidth, targetHeight,
+                    stored.getUrl(), stored.getKey(), (long) jpeg.length));
+        }
+    }
+
+    // Thay toàn bộ thumbnail của course. File cũ chỉ bị xóa khỏi storage sau khi transaction commit;
+    // nếu rollback thì xóa các file mới vừa tạo, DB vẫn trỏ tới file cũ
+    @Transactional
+    public void replace(Long courseId, List<CourseThumbnail> thumbnails) {
+        List<CourseThumbnail> previous = courseThumbnailRepository.findByCourseId(courseId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    deleteFiles(previous, "Old thumbnail");
+                } else if (status == STATUS_ROLLED_BACK) {
+                    deleteFiles(thumbnails, "Unused thumbnail");
+                }
+            }
+        });
+        courseThumbnailRepository.deleteByCourseId(courseId);
+        courseThumbnailRepository.saveAll(thumbnails);
+    }
+
+    private void deleteFiles(List<CourseThumbnail> thumbnails, String kind) {
+        for (CourseThumbnail thumbnail : thumbnails) {
+            try {
+                mediaStorage.delete(thumbnail.getStorageKey());
+            } catch (IOException | RuntimeException e) {
+                log.warn("{} {} could not be deleted: {}", kind, thumbnail.getStorageKey(), e.getMessage());
+            }
+        }
+    }
+
+    // Xóa thumbnail của course; file trong storage chỉ bị xóa sau khi transaction commit
+    @Transactional
+    public void deleteByCourseId(Long courseId) {
+        List<CourseThumbnail> previous = courseThumbnailRepository.findByCourseId(courseId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    deleteFiles(previous, "Deleted course thumbnail");
+                }
+            }
+        });
+        courseThumbnailRepository.deleteByCourseId(courseId);
+    }
+
+    // courseId -> (width -> url), đọc bằng một truy vấn cho cả danh sách
+    @Transactional(readOnly = true)
+    public Map<Long, Map<Integer, String>> findUrlsByCourseIds(Collection<Long> courseIds) {
+        if (courseIds.isEmpty()) {
+            return Map.of();
+        }
+        return courseThumbnailRepository.findByCourseIdInOrderByCourseIdAscWidthAsc(courseIds).stream()
+                .collect(Collectors.groupingBy(CourseThumbnail::getCourseId, LinkedHashMap::new,
+                        Collectors.toMap(CourseThumbnail::getWidth, CourseThumbnail::getUrl,
+                                (first, second) -> first, LinkedHashMap::new)));
+    }
+
+    // Giải mã với subsampling để ảnh nhiều megapixel không chiếm nhiều heap,
+    // vẫn giữ ít nhất gấp đôi chiều rộng lớn nhất cần tạo để resize không bị mờ
+    private BufferedImage readSubsampled(Path source, int maxTargetWidth) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int subsampling = Math.max(1, sourceWidth / (maxTargetWidth * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage resize(BufferedImage image, int width, int height) {
+        BufferedImage current = image;
+        // Giảm dần từng nửa rồi mới về kích thước đích để tránh răng cưa khi thu nhỏ mạnh
+        while (current.getWidth() / 2 >= width) {
+            current = draw(current, current.getWidth() / 2, Math.max(1, current.getHeight() / 2));
+        }
+        return draw(current, width, height);
+    }
+
+    // Vẽ lên nền trắng RGB: JPEG không có kênh alpha (PNG trong suốt)
+    private BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    private String stripExtension(String key) {
+        int slash = key.lastIndexOf('/');
+        int dot = key.lastIndexOf('.');
+        return dot > slash ? key.substring(0, dot) : key;
+    }
+}
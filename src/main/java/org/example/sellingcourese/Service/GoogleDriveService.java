@@ -0,0 +1,254 @@
+package org.example.sellingcourese.Service;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.InputStreamContent;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.DriveScopes;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// Client Google Drive dùng chung cho cả ứng dụng: credentials được nạp một lần, access token được làm mới
+// trước khi hết hạn, và một HTTP transport duy nhất với connection pool keep-alive được tái sử dụng.
+// Metrics: drive.requests (latency theo operation/outcome), drive.http.connections.created,
+// drive.http.connections (leased/available), drive.credentials.refreshes.
+@Service
+public class GoogleDriveService {
+    private static final Logger log = LoggerFactory.getLogger(GoogleDriveService.class);
+    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+    // Làm mới token khi còn dưới 5 phút
+    private static final long TOKEN_REFRESH_MARGIN_SECONDS = 300;
+
+    @Value("${media.upload.chunk-size-mb:8}")
+    private int uploadChunkSizeMb;
+
+    @Value("${google.drive.folder-id:1SarwgB_52SplTKxlmCvL-ilBwMOKR5Ta}")
+    private String folderId;
+
+    // Để trống thì dùng https://www.googleapis.com/; trỏ tới fake server khi test
+    @Value("${google.drive.root-url:}")
+    private String rootUrl;
+
+    // Service account key: tên trong classpath (res.json) hoặc file:/đường/dẫn; để trống khi dùng fake server
+    // không cần xác thực
+    @Value("${google.drive.credentials:res.json}")
+    private String credentialsResource;
+
+    @Value("${google.drive.max-connections:20}")
+    private int maxConnections;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+    private HttpTransport transport;
+    private GoogleCredential credential;
+    private volatile Drive drive;
+
+    private Counter connectionsCreated;
+    private Counter credentialRefreshes;
+
+    // Khởi tạo lười ở lần gọi đầu tiên để ứng dụng vẫn chạy được khi chưa cấu hình credentials
+    private Drive driveClient() {
+        Drive current = drive;
+        if (current == null) {
+            synchronized (this) {
+                if (drive == null) {
+                    drive = createDriveClient();
+                }
+                current = drive;
+            }
+        }
+        refreshTokenIfNeeded();
+        return current;
+    }
+
+    private Drive createDriveClient() {
+        try {
+            connectionsCreated = meterRegistry.counter("drive.http.connections.created");
+            credentialRefreshes = meterRegistry.counter("drive.credentials.refreshes");
+
+            // Mỗi connection mới đi qua factory này -> đếm được số connection thực sự được mở
+            Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                    .build();
+            connectionManager = new PoolingHttpClientConnectionManager(socketFactories,
+                    (route, config) -> {
+                        connectionsCreated.increment();
+                        return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+                    });
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnections);
+            connectionManager.setValidateAfterInactivity(10_000);
+            Gauge.builder("drive.http.connections", connectionManager, cm -> cm.getTotalStats().getLeased())
+                    .tag("state", "leased").register(meterRegistry);
+            Gauge.builder("drive.http.connections", connectionManager, cm -> cm.getTotalStats().getAvailable())
+                    .tag("state", "available").register(meterRegistry);
+
+            transport = new ApacheHttpTransport(ApacheHttpTransport.newDefaultHttpClientBuilder()
+                    .setConnectionManager(connectionManager)
+                    .evictIdleConnections(60, TimeUnit.SECONDS)
+                    .build());
+
+            HttpRequestInitializer requestInitializer = request -> { };
+            if (credentialsResource != null && !credentialsResource.isBlank()) {
+                Resource resource = new DefaultResourceLoader().getResource(credentialsResource);
+                if (!resource.exists()) {
+                    throw new FileNotFoundException("Credentials " + credentialsResource + " not found");
+                }
+                try (InputStream inputStream = resource.getInputStream()) {
+                    credential = GoogleCredential.fromStream(inputStream, transport, JSON_FACTORY)
+                            .createScoped(Collections.singleton(DriveScopes.DRIVE));
+                }
+                requestInitializer = credential;
+            }
+
+            Drive.Builder builder = new Drive.Builder(transport, JSON_FACTORY, requestInitializer)
+                    .setApplicationName("SellingCourse");
+            if (rootUrl != null && !rootUrl.isBlank()) {
+                builder.setRootUrl(rootUrl);
+            }
+            log.info("Google Drive client initialized (max {} pooled connections)", maxConnections);
+            return builder.build();
+        } catch (IOException e) {
+            log.error("Failed to create Google Drive service due to IO error: {}", e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create Google Drive service", e);
+        }
+    }
+
+    // Làm mới access token trước khi hết hạn thay vì để request đầu tiên sau khi hết hạn bị 401
+    private void refreshTokenIfNeeded() {
+        if (credential == null) {
+            return;
+        }
+        synchronized (credential) {
+            Long expiresIn = credential.getExpiresInSeconds();
+            if (expiresIn != null && expiresIn > TOKEN_REFRESH_MARGIN_SECONDS) {
+                return;
+            }
+            try {
+                if (credential.refreshToken()) {
+                    credentialRefreshes.increment();
+                }
+            } catch (IOException e) {
+                // Request sau vẫn có thể tự refresh khi nhận 401
+                log.warn("Proactive Google token refresh failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Đo latency mỗi lần gọi Drive API theo operation và kết quả
+    private <T> T timed(String operation, DriveCall<T> call) throws IOException {
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            return call.execute();
+        } catch (IOException | RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            Timer.builder("drive.requests")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @FunctionalInterface
+    private interface DriveCall<T> {
+        T execute() throws IOException;
+    }
+
+    // Upload file to Google Drive bằng resumable upload theo từng chunk, đọc trực tiếp từ stream.
+    // Bộ nhớ dùng cho mỗi upload chỉ khoảng một chunk, không phụ thuộc kích thước file.
+    public String uploadStream(String fileName, InputStream inputStream, long length, String mimeType) {
+        try {
+            Drive driveService = driveClient();
+
+            // Create file metadata
+            com.google.api.services.drive.model.File fileMetadata = new com.google.api.services.drive.model.File();
+            fileMetadata.setName(fileName);
+            fileMetadata.setParents(Collections.singletonList(folderId));
+
+            // BufferedInputStream hỗ trợ mark/reset để uploader gửi lại chunk khi bị lỗi
+            InputStreamContent mediaContent = new InputStreamContent(mimeType, new BufferedInputStream(inputStream));
+            mediaContent.setLength(length);
+
+            Drive.Files.Create createRequest = driveService.files()
+                    .create(fileMetadata, mediaContent)
+                    .setFields("id, webContentLink");
+            MediaHttpUploader uploader = createRequest.getMediaHttpUploader();
+            uploader.setDirectUploadEnabled(false);
+            uploader.setChunkSize(uploadChunkSize());
+            uploader.setProgressListener(progress -> {
+                if (progress.getUploadState() == MediaHttpUploader.UploadState.MEDIA_IN_PROGRESS) {
+                    log.debug("Uploading {}: {} / {} bytes", fileName, progress.getNumBytesUploaded(), length);
+                }
+            });
+
+            // Upload file
+            com.google.api.services.drive.model.File uploadedFile = timed("files.create", createRequest::execute);
+
+            // Make the file publicly accessible
+            com.google.api.services.drive.model.Permission permission = new com.google.api.services.drive.model.Permission()
+                    .setType("anyone")
+                    .setRole("reader");
+
+            timed("permissions.create", () -> driveService.permissions().create(uploadedFile.getId(), permission).execute());
+
+            log.info("File uploaded successfully: {}", uploadedFile.getWebContentLink());
+            return "https://drive.google.com/uc?export=view&id=" + uploadedFile.getId();
+        } catch (IOException e) {
+            log.error("IO error during file upload: {}", e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "File upload failed due to IO error", e);
+        } catch (ResponseStatusException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Unexpected error during file upload: {}", e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Unexpected error during file upload", e);
+        }
+    }
+
+    // Chunk size phải là bội số của 256KB (MediaHttpUploader.MINIMUM_CHUNK_SIZE)
+    private int uploadChunkSize() {
+        int chunksOf256Kb = Math.max(1, uploadChunkSizeMb * 4);
+        return chunksOf256Kb * MediaHttpUploader.MINIMUM_CHUNK_SIZE;
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (transport != null) {
+            transport.shutdown();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package org.example.sellingcourese.Service;
+
+import org.example.sellingcourese.storage.MediaStorage;
+import org.example.sellingcourese.storage.StoredMedia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Cắt video đã upload thành các segment HLS (VOD) bằng ffmpeg và lưu qua MediaStorage.
+// Có libx264 thì encode thêm các rendition theo media.hls.renditions, không thì chỉ remux (-c copy).
+// Không có ffmpeg thì bỏ qua, course vẫn phát bằng file MP4 gốc.
+@Component
+public class HlsPackager {
+    private static final Logger log = LoggerFactory.getLogger(HlsPackager.class);
+    private static final String PLAYLIST_TYPE = "application/vnd.apple.mpegurl";
+    private static final String SEGMENT_TYPE = "video/mp2t";
+
+    @Autowired
+    private MediaStorage mediaStorage;
+
+    @Value("${media.hls.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.hls.ffmpeg-path:ffmpeg}")
+    private String ffmpegPath;
+
+    @Value("${media.hls.ffprobe-path:ffprobe}")
+    private String ffprobePath;
+
+    @Value("${media.hls.segment-seconds:6}")
+    private int segmentSeconds;
+
+    // Chiều cao các rendition khi có encoder, không upscale quá độ phân giải gốc
+    @Value("${media.hls.renditions:240,360,720}")
+    private int[] renditions;
+
+    @Value("${media.hls.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    // Dùng chung cấu hình retry với upload media gốc
+    @Value("${media.worker.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${media.worker.initial-backoff-ms:2000}")
+    private long initialBackoffMs;
+
+    // null = chưa kiểm tra; kết quả probe được giữ cho cả vòng đời ứng dụng
+    private volatile Boolean ffmpegAvailable;
+    private volatile boolean encoderAvailable;
+
+    public boolean isAvailable() {
+        if (!enabled) {
+            return false;
+        }
+        if (ffmpegAvailable == null) {
+            synchronized (this) {
+                if (ffmpegAvailable == null) {
+                    probeFfmpeg();
+                }
+            }
+        }
+        return ffmpegAvailable;
+    }
+
+    // Trả về StoredMedia của master playlist, hoặc null nếu không có ffmpeg
+    public StoredMedia packageVideo(Long courseId, Path source) throws IOException, InterruptedException {
+        if (!isAvailable()) {
+            return null;
+        }
+        Path workDir = Files.createTempDirectory("hls-");
+        try {
+            int[] sourceSize = probeSize(source);
+            List<Variant> variants = planVariants(sourceSize);
+            for (Variant variant : variants) {
+                Path variantDir = Files.createDirectories(workDir.resolve(variant.name));
+                runFfmpeg(segmentCommand(source, variantDir, variant), workDir.resolve(variant.name + ".log"));
+            }
+
+            // Thư mục theo UUID nên mọi key đều bất biến, client/CDN cache được lâu dài
+            String baseKey = "courses/" + courseId + "/hls/" + UUID.randomUUID();
+            StringBuilder master = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n");
+            for (Variant variant : variants) {
+                Path variantDir = workDir.resolve(variant.name);
+                PlaylistUpload upload = uploadVariant(baseKey + "/" + variant.name, variantDir);
+                master.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(upload.peakBandwidth);
+                if (variant.width > 0 && variant.height > 0) {
+                    master.append(",RESOLUTION=").append(variant.width).append('x').append(variant.height);
+                }
+                master.append('\n').append(upload.url).append('\n');
+            }
+            byte[] masterBytes = master.toString().getBytes(StandardCharsets.UTF_8);
+            StoredMedia stored = storeBytes(baseKey + "/master.m3u8", masterBytes);
+            log.info("HLS for course {} packaged with {} variant(s)", courseId, variants.size());
+            return stored;
+        } finally {
+            deleteRecursively(workDir);
+        }
+    }
+
+    private static class Variant {
+        private final String name;
+        private final int width;
+        private final int height;
+        // 0 = remux, giữ nguyên bitrate gốc
+        private final int videoKbps;
+
+        private Variant(String name, int width, int height, int videoKbps) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.videoKbps = videoKbps;
+        }
+    }
+
+    private static class PlaylistUpload {
+        private final String url;
+        private final long peakBandwidth;
+
+        private PlaylistUpload(String url, long peakBandwidth) {
+            this.url = url;
+            this.peakBandwidth = peakBandwidth;
+        }
+    }
+
+    private List<Variant> planVariants(int[] sourceSize) {
+        List<Variant> variants = new ArrayList<>();
+        if (encoderAvailable) {
+            int sourceHeight = sourceSize != null ? sourceSize[1] : Integer.MAX_VALUE;
+            for (int height : Arrays.stream(renditions).sorted().distinct().toArray()) {
+                if (height > sourceHeight) {
+                    continue;
+                }
+                int width = sourceSize != null ? evenWidth(sourceSize[0], sourceSize[1], height) : 0;
+                variants.add(new Variant(height + "p", width, height, bitrateFor(height)));
+            }
+        }
+        if (variants.isEmpty()) {
+            // Không có encoder hoặc video nhỏ hơn mọi rendition: chỉ cắt segment từ stream gốc
+            variants.add(new Variant("source", sourceSize != null ? sourceSize[0] : 0,
+                    sourceSize != null ? sourceSize[1] : 0, 0));
+        }
+        return variants;
+    }
+
+    private int bitrateFor(int height) {
+        if (height <= 240) {
+            return 400;
+        } else if (height <= 360) {
+            return 800;
+        } else if (height <= 480) {
+            return 1400;
+        } else if (height <= 720) {
+            return 2800;
+        }
+        return 5000;
+    }
+
+    private int evenWidth(int sourceWidth, int sourceHeight, int height) {
+        int width = (int) Math.round((double) sourceWidth * height / sourceHeight);
+        return width % 2 == 0 ? width : width + 1;
+    }
+
+    private List<String> segmentCommand(Path source, Path variantDir, Variant variant) {
+        List<String> command = new ArrayList<>(List.of(ffmpegPath, "-hide_banner", "-nostdin", "-y",
+                "-i", source.toString(), "-map", "0:v:0", "-map", "0:a:0?"));
+        if (variant.videoKbps == 0) {
+            command.addAll(List.of("-c", "copy"));
+        } else {
+            // Keyframe đúng mỗi segmentSeconds để các rendition chuyển đổi được tại ranh giới segment
+            command.addAll(List.of("-vf", "scale=-2:" + variant.height,
+                    "-c:v", "libx264", "-preset", "veryfast", "-profile:v", "main",
+                    "-b:v", variant.videoKbps + "k", "-maxrate", (variant.videoKbps * 107 / 100) + "k",
+                    "-bufsize", (variant.videoKbps * 2) + "k",
+                    "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")", "-sc_threshold", "0",
+                    "-c:a", "aac", "-b:a", "128k", "-ac", "2"));
+        }
+        command.addAll(List.of("-f", "hls", "-hls_time", String.valueOf(segmentSeconds),
+                "-hls_playlist_type", "vod",
+                "-hls_segment_filename", variantDir.resolve("seg_%05d.ts").toString(),
+                variantDir.resolve("index.m3u8").toString()));
+        return command;
+    }
+
+    // Upload segment trước, sau đó ghi lại playlist với URL thật của từng segment
+    private PlaylistUpload uploadVariant(String variantKey, Path variantDir) throws IOException, InterruptedException {
+        List<String> lines = Files.readAllLines(variantDir.resolve("index.m3u8"), StandardCharsets.UTF_8);
+        StringBuilder playlist = new StringBuilder();
+        long peakBandwidth = 0;
+        double segmentDuration = segmentSeconds;
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("#EXTINF:")) {
+                segmentDuration = parseDuration(trimmed);
+            }
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                playlist.append(line).append('\n');
+                continue;
+            }
+            Path segment = variantDir.resolve(trimmed).normalize();
+            if (!segment.startsWith(variantDir)) {
+                throw new IOException("Unexpected segment path in playlist: " + trimmed);
+            }
+            long size = Files.size(segment);
+            StoredMedia stored = storeWithRetry(variantKey + "/" + segment.getFileName(), SEGMENT_TYPE, size,
+                    () -> Files.newInputStream(segment));
+            if (segmentDuration > 0) {
+                peakBandwidth = Math.max(peakBandwidth, (long) Math.ceil(size * 8 / segmentDuration));
+            }
+            playlist.append(stored.getUrl()).append('\n');
+        }
+        StoredMedia storedPlaylist = storeBytes(variantKey + "/index.m3u8",
+                playlist.toString().getBytes(StandardCharsets.UTF_8));
+        return new PlaylistUpload(storedPlaylist.getUrl(), Math.max(peakBandwidth, 1));
+    }
+
+    private double parseDuration(String extinf) {
+        String value = extinf.substring("#EXTINF:".length());
+        int comma = value.indexOf(',');
+        try {
+            return Double.parseDouble(comma >= 0 ? value.substring(0, comma) : value);
+        } catch (NumberFormatException e) {
+            return segmentSeconds;
+        }
+    }
+
+    private StoredMedia storeBytes(String key, byte[] content) throws IOException, InterruptedException {
+        return storeWithRetry(key, PLAYLIST_TYPE, content.length, () -> new ByteArrayInputStream(content));
+    }
+
+    private interface ContentSource {
+        InputStream open() throws IOException;
+    }
+
+    // Mỗi file được thử lại riêng có backoff: một lỗi tạm thời của storage không làm hỏng cả gói HLS
+    private StoredMedia storeWithRetry(String key, String mimeType, long size, ContentSource content)
+            throws IOException, InterruptedException {
+        long backoff = initialBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try (InputStream inputStream = content.open()) {
+                return mediaStorage.store(key, mimeType, size, inputStream);
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.warn("Upload of {} failed (attempt {}/{}), retrying in {} ms: {}",
+                        key, attempt, maxAttempts, backoff, e.getMessage());
+                Thread.sleep(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+
+    private void probeFfmpeg() {
+        try {
+            Path output = Files.createTempFile("ffmpeg-probe-", ".log");
+            try {
+                runFfmpeg(List.of(ffmpegPath, "-hide_banner", "-encoders"), output);
+                String encoders = Files.readString(output, StandardCharsets.UTF_8);
+                encoderAvailable = encoders.contains("libx264") && encoders.contains("aac");
+                ffmpegAvailable = true;
+                log.info("ffmpeg found at {}, renditions {}", ffmpegPath,
+                        encoderAvailable ? "enabled" : "disabled (libx264/aac missing, segmenting only)");
+            } finally {
+                Files.deleteIfExists(output);
+            }
+        } catch (IOException e) {
+            ffmpegAvailable = false;
+            log.warn("ffmpeg not available at {}, HLS packaging disabled: {}", ffmpegPath, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ffmpegAvailable = false;
+        }
+    }
+
+    // [width, height] của stream video đầu tiên, null nếu ffprobe không chạy được
+    private int[] probeSize(Path source) throws InterruptedException {
+        try {
+            Path output = Files.createTempFile("ffprobe-", ".log");
+            try {
+                runFfmpeg(List.of(ffprobePath, "-v", "error", "-select_streams", "v:0",
+                        "-show_entries", "stream=width,height", "-of", "csv=p=0:s=x", source.toString()), output);
+                String[] size = Files.readString(output, StandardCharsets.UTF_8).trim().split("x");
+                return new int[]{Integer.parseInt(size[0].trim()), Integer.parseInt(size[1].trim())};
+            } finally {
+                Files.deleteIfExists(output);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("ffprobe failed for {}: {}", source, e.getMessage());
+            return null;
+        }
+    }
+
+    // Output của tiến trình ghi vào file để không bị nghẽn pipe
+    private void runFfmpeg(List<String> command, Path logFile) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile.toFile())
+                .start();
+        if (!process.waitFor(timeoutMinutes, TimeUnit.MINUTES)) {
+            process.destroyForcibly();
+            throw new IOException(command.get(0) + " timed out after " + timeoutMinutes + " minutes");
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException(command.get(0) + " exited with " + process.exitValue() + ": " + tail(logFile));
+        }
+    }
+
+    private String tail(Path logFile) {
+        try {
+            String content = Files.readString(logFile, StandardCharsets.UTF_8).trim();
+            return content.length() > 500 ? content.substring(content.length() - 500) : content;
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Temporary file could not be deleted: {}", path);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Temporary directory could not be deleted: {}", dir);
+        }
+    }
+}
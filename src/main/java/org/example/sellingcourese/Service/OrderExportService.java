@@ -0,0 +1,216 @@
+package org.example.sellingcourese.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.example.sellingcourese.Model.Order;
+import org.example.sellingcourese.Model.OrderItem;
+import org.example.sellingcourese.repository.OrderDetailRepository;
+import org.example.sellingcourese.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Xuất Orders / Order_items theo luồng: đọc bằng cursor (fetch size) trong transaction read-only
+// và ghi từng dòng ra response, bộ nhớ không tăng theo kích thước bảng
+@Service
+public class OrderExportService {
+    private static final Logger log = LoggerFactory.getLogger(OrderExportService.class);
+    // Số entity giữ trong persistence context trước khi clear
+    private static final int CLEAR_EVERY = 500;
+
+    private static final String[] ORDER_COLUMNS = {"id", "userId", "statusId", "totalPrice", "completedAt"};
+    private static final String[] ORDER_ITEM_COLUMNS = {"id", "orderId", "courseId", "quantity", "price"};
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderDetailRepository orderDetailRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public enum ExportFormat {
+        NDJSON(MediaType.parseMediaType("application/x-ndjson"), "ndjson"),
+        CSV(MediaType.parseMediaType("text/csv;charset=UTF-8"), "csv");
+
+        private final MediaType mediaType;
+        private final String extension;
+
+        ExportFormat(MediaType mediaType, String extension) {
+            this.mediaType = mediaType;
+            this.extension = extension;
+        }
+
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static ExportFormat from(String value) {
+            if (value == null || value.isBlank()) {
+                return NDJSON;
+            }
+            try {
+                return ExportFormat.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported format: " + value);
+            }
+        }
+    }
+
+    // statusId = null: tất cả đơn hàng
+    public StreamingResponseBody exportOrders(Long statusId, ExportFormat format) {
+        return export("orders", () -> orderRepository.streamForExport(statusId), ORDER_COLUMNS,
+                order -> new Object[]{order.getId(), order.getUserId(), order.getStatusId(), order.getTotalPrice(),
+                        order.getCompletedAt()},
+                format);
+    }
+
+    public StreamingResponseBody exportOrderItems(ExportFormat format) {
+        return export("order items", orderDetailRepository::streamForExport, ORDER_ITEM_COLUMNS,
+                item -> new Object[]{item.getId(), item.getOrderId(), item.getCourseId(), item.getQuantity(),
+                        item.getPrice()},
+                format);
+    }
+
+    // Body chạy trên thread async của MVC sau khi controller trả về, nên transaction được mở ở đây
+    private <T> StreamingResponseBody export(String name, Supplier<Stream<T>> source, String[] columns,
+                                             Function<T, Object[]> toRow, ExportFormat format) {
+        return outputStream -> {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            RowWriter rowWriter = format == ExportFormat.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+            long started = System.currentTimeMillis();
+            Long rows = readOnly.execute(status -> {
+                long count = 0;
+                try (Stream<T> stream = source.get()) {
+                    rowWriter.header(columns);
+                    Iterator<T> iterator = stream.iterator();
+                    while (iterator.hasNext()) {
+                        rowWriter.row(columns, toRow.apply(iterator.next()));
+                        if (++count % CLEAR_EVERY == 0) {
+                            entityManager.clear();
+                        }
+                    }
+                    rowWriter.finish();
+                } catch (IOException e) {
+                    // Client ngắt kết nối giữa chừng: dừng đọc, đóng cursor
+                    throw new UncheckedIOException(e);
+                }
+                return count;
+            });
+            log.info("Exported {} {} as {} in {} ms", rows, name, format, System.currentTimeMillis() - started);
+        };
+    }
+
+    private interface RowWriter {
+        void header(String[] columns) throws IOException;
+
+        void row(String[] columns, Object[] values) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    // Mỗi dòng là một JSON object, phân tách bằng \n
+    private class NdjsonRowWriter implements RowWriter {
+        private final Writer writer;
+        private JsonGenerator generator;
+
+        private NdjsonRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void header(String[] columns) throws IOException {
+            generator = objectMapper.getFactory().createGenerator(writer);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void row(String[] columns, Object[] values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < columns.length; i++) {
+                generator.writeObjectField(columns[i], values[i]);
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush();
+        }
+    }
+
+    private static class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        private CsvRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void header(String[] columns) throws IOException {
+            row(columns, columns);
+        }
+
+        @Override
+        public void row(String[] columns, Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(escape(values[i]));
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        private String escape(Object value) {
+            if (value == null) {
+                return "";
+            }
+            String text = value.toString();
+            if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+                return text;
+            }
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.sellingcourese.Service;
+
+import jakarta.mail.MessagingException;
+import org.example.sellingcourese.Model.User;
+import org.example.sellingcourese.event.OrderPaidEvent;
+import org.example.sellingcourese.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+// Gửi email xác nhận khi đơn hàng đã được thanh toán; ném lỗi để PaymentOutboxRelay thử lại
+@Component
+public class OrderPaidEmailListener {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EmailService emailService;
+
+    @EventListener
+    public void onOrderPaid(OrderPaidEvent event) {
+        String email = userRepository.findById(event.getUserId()).map(User::getEmail).orElse(null);
+        if (email == null || email.isBlank()) {
+            return;
+        }
+        String content = String.format("""
+                <p>Thanh toán cho đơn hàng #%d đã thành công.</p>
+                <p>Số tiền: %s VND</p>
+                <p>Mã giao dịch: %s</p>
+                """, event.getOrderId(), event.getAmount() != null ? event.getAmount().toPlainString() : "", event.getTxnRef());
+        try {
+            emailService.sendEmail(email, "Xác nhận thanh toán đơn hàng #" + event.getOrderId(), content);
+        } catch (MessagingException e) {
+            throw new IllegalStateException("Payment confirmation email could not be sent", e);
+        }
+    }
+}
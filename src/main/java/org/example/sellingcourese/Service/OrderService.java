@@ -4,6 +4,9 @@ import jakarta.persistence.EntityNotFoundException;
 import org.example.sellingcourese.Model.*;
 import org.example.sellingcourese.Request.OrderDTO;
 import org.example.sellingcourese.Request.OrderDetailsResponse;
+import org.example.sellingcourese.Request.OrderHistoryDTO;
+import org.example.sellingcourese.Request.OrderHistoryLineDTO;
+import org.example.sellingcourese.Request.OrderHistoryPage;
 import org.example.sellingcourese.Request.OrderItemDTO;
 
 import org.example.sellingcourese.repository.*;
@@ -11,12 +14,16 @@ import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -24,6 +31,14 @@ import java.util.stream.Collectors;
 public class OrderService {
 
     private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
+    private static final int MAX_OWNERSHIP_LOOKUP = 200;
+    // Trạng thái "Complete" có ID là 3
+    private static final long COMPLETED_STATUS_ID = 3L;
+    private static final long PENDING_STATUS_ID = 2L;
+    private static final int MAX_ORDER_ITEMS = 200;
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 100;
+    private static final int DEFAULT_HISTORY_PAGE_SIZE = 20;
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
     @Autowired
     private OrderRepository orderRepository;
 
@@ -31,26 +46,57 @@ public class OrderService {
     private OrderDetailRepository orderItemRepository;
     @Autowired
     private  OrderDetailRepository orderDetailRepository;
+    @Autowired
+    private CartSessionStore cartSessionStore;
+
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartDetailRepository cartDetailRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
 
     // Get all orders
     public List<Order> getAllOrders() {
         return orderRepository.findAll();
     }
+    // Course nào trong danh sách user đã mua (dùng cho trang catalog)
+    @Transactional(readOnly = true)
+    public List<Long> getOwnedCourseIds(Long userId, List<Long> courseIds) {
+        if (courseIds == null || courseIds.isEmpty()) {
+            return List.of();
+        }
+        if (courseIds.size() > MAX_OWNERSHIP_LOOKUP) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + MAX_OWNERSHIP_LOOKUP + " course IDs per request");
+        }
+        return orderDetailRepository.findOwnedCourseIds(userId, new HashSet<>(courseIds));
+    }
+
     public List<Order> getCompletedOrders() {
-        Long completedStatusId = 3L; // Trạng thái "Complete" có ID là 3
-        return orderRepository.findByStatusId(completedStatusId);
+        return orderRepository.findByStatusId(COMPLETED_STATUS_ID);
     }
+    @Transactional(readOnly = true)
     public List<OrderDetailsResponse> getOrdersByUserIdAndStatus(Long userId, Long statusId) {
         // Lấy tất cả các đơn hàng của userId với trạng thái là 3
         List<Order> orders = orderRepository.findByUserIdAndStatusId(userId, statusId);
+        Map<Long, List<OrderItem>> itemsByOrder = findItemsWithCourse(orders);
 
         return orders.stream().map(order -> {
-            // Lấy tất cả các OrderItem cho đơn hàng
-            List<OrderItem> orderItems = orderItemRepository.findByOrderId(order.getId());
+            List<OrderItem> orderItems = itemsByOrder.getOrDefault(order.getId(), List.of());
 
-            // Tính tổng số tiền của đơn hàng
+            // Tính tổng số tiền của đơn hàng (course đã được nạp cùng OrderItem)
             BigDecimal totalAmount = orderItems.stream()
+                    .filter(orderItem -> orderItem.getCourse() != null)
                     .map(orderItem -> orderItem.getCourse().getPrice().multiply(BigDecimal.valueOf(orderItem.getQuantity())))
                     .reduce(BigDecimal.ZERO, BigDecimal::add);
 
@@ -58,43 +104,230 @@ public class OrderService {
             return new OrderDetailsResponse(orderItems, order, totalAmount);
         }).collect(Collectors.toList());
     }
-    // Add a new order
+
+    // Lịch sử mua theo trang: một truy vấn cho đơn hàng + tổng tiền, một truy vấn cho các dòng
+    @Transactional(readOnly = true)
+    public OrderHistoryPage getOrderHistory(Long userId, String cursor, Integer size) {
+        int pageSize = size == null ? DEFAULT_HISTORY_PAGE_SIZE : Math.max(1, Math.min(size, MAX_HISTORY_PAGE_SIZE));
+        long beforeId = cursor == null || cursor.isBlank() ? Long.MAX_VALUE : decodeHistoryCursor(cursor);
+
+        // Lấy dư một dòng để biết còn trang sau hay không
+        List<OrderHistoryDTO> rows = orderRepository.findHistoryPage(userId, beforeId, PageRequest.of(0, pageSize + 1));
+        boolean hasMore = rows.size() > pageSize;
+        List<OrderHistoryDTO> orders = hasMore ? rows.subList(0, pageSize) : rows;
+
+        if (!orders.isEmpty()) {
+            Map<Long, List<OrderHistoryLineDTO>> linesByOrder = orderItemRepository
+                    .findHistoryLines(orders.stream().map(OrderHistoryDTO::getOrderId).toList()).stream()
+                    .collect(Collectors.groupingBy(OrderHistoryLineDTO::getOrderId));
+            for (OrderHistoryDTO order : orders) {
+                order.setItems(linesByOrder.getOrDefault(order.getOrderId(), List.of()));
+            }
+        }
+        String nextCursor = hasMore ? encodeHistoryCursor(orders.get(orders.size() - 1).getOrderId()) : null;
+        return new OrderHistoryPage(orders, nextCursor, hasMore);
+    }
+
+    private Map<Long, List<OrderItem>> findItemsWithCourse(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return Map.of();
+        }
+        return orderItemRepository.findWithCourseByOrderIdIn(orders.stream().map(Order::getId).toList()).stream()
+                .collect(Collectors.groupingBy(OrderItem::getOrderId));
+    }
+
+    // Cursor là id đơn hàng cuối của trang trước, mã hóa base64url như cursor của catalog
+    private String encodeHistoryCursor(Long lastOrderId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastOrderId.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long decodeHistoryCursor(String cursor) {
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", e);
+        }
+    }
+    // Đặt hàng: giá lấy từ Courses bằng một truy vấn theo tập id (không tin totalPrice của client),
+    // các dòng có id từ sequence nên được insert theo lô. Cùng idempotency key chỉ tạo một đơn.
     @Transactional
-    public Order createOrder(OrderDTO orderDTO) {
-        Order order = new Order();
-        order.setUserId(orderDTO.getUserId());
-        order.setTotalPrice(orderDTO.getTotalPrice());
-        order.setStatusId(2L);
+    public Order createOrder(OrderDTO orderDTO, String idempotencyKey) {
+        Long userId = orderDTO.getUserId();
+        if (userId == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "userId is required");
+        }
+        String key = normalizeIdempotencyKey(idempotencyKey != null ? idempotencyKey : orderDTO.getIdempotencyKey());
+        if (key != null) {
+            Optional<Order> existing = orderRepository.findByUserIdAndIdempotencyKey(userId, key);
+            if (existing.isPresent()) {
+                return withItems(existing.get());
+            }
+        }
 
-        Order savedOrder = orderRepository.save(order);
+        List<OrderItemDTO> items = orderDTO.getOrderItems();
+        if (items == null || items.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Order has no items");
+        }
+        if (items.size() > MAX_ORDER_ITEMS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + MAX_ORDER_ITEMS + " items per order");
+        }
+        // Gộp các dòng trùng course
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItemDTO item : items) {
+            if (item.getCourseId() == null || item.getQuantity() < 1) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid order item");
+            }
+            quantities.merge(item.getCourseId(), item.getQuantity(), Integer::sum);
+        }
+        Map<Long, Course> courses = courseRepository.findAllById(quantities.keySet()).stream()
+                .filter(course -> course.getDeletedAt() == null)
+                .collect(Collectors.toMap(Course::getId, course -> course));
+        for (Long courseId : quantities.keySet()) {
+            if (!courses.containsKey(courseId)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Course not found with ID: " + courseId);
+            }
+        }
+        BigDecimal totalPrice = quantities.entrySet().stream()
+                .map(entry -> courses.get(entry.getKey()).getPrice().multiply(BigDecimal.valueOf(entry.getValue())))
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        if (orderDTO.getTotalPrice() != null && orderDTO.getTotalPrice().compareTo(totalPrice) != 0) {
+            logger.warn("Order total from client {} differs from server total {} for user {}",
+                    orderDTO.getTotalPrice(), totalPrice, userId);
+        }
 
-        Set<OrderItem> orderItems = orderDTO.getOrderItems().stream().map(itemDTO -> {
+        Long orderId = orderRepository.insertIfAbsent(userId, PENDING_STATUS_ID, totalPrice, key);
+        if (orderId == null) {
+            // Một request song song với cùng key vừa tạo đơn
+            return withItems(orderRepository.findByUserIdAndIdempotencyKey(userId, key)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT, "Order is being created")));
+        }
+
+        Set<OrderItem> orderItems = quantities.entrySet().stream().map(entry -> {
             OrderItem orderItem = new OrderItem();
-            orderItem.setOrderId(savedOrder.getId());
-            orderItem.setCourseId(itemDTO.getCourseId());
-            orderItem.setQuantity(itemDTO.getQuantity());
+            orderItem.setOrderId(orderId);
+            orderItem.setCourseId(entry.getKey());
+            orderItem.setQuantity(entry.getValue());
+            orderItem.setPrice(courses.get(entry.getKey()).getPrice());
             return orderItem;
-        }).collect(Collectors.toSet());
-
+        }).collect(Collectors.toCollection(LinkedHashSet::new));
         orderItemRepository.saveAll(orderItems);
 
+        Order savedOrder = new Order();
+        savedOrder.setId(orderId);
+        savedOrder.setUserId(userId);
+        savedOrder.setTotalPrice(totalPrice);
+        savedOrder.setStatusId(PENDING_STATUS_ID);
+        savedOrder.setIdempotencyKey(key);
         savedOrder.setOrderItems(orderItems);
         return savedOrder;
     }
+
+    // Checkout từ giỏ hàng trên server: snapshot cart, tạo đơn + dòng bằng INSERT ... SELECT và xóa cart
+    // trong một transaction, không còn trạng thái nửa chừng khi client mất kết nối giữa các bước.
+    public Order checkout(Long userId, String idempotencyKey) {
+        String key = normalizeIdempotencyKey(idempotencyKey);
+        if (key != null) {
+            Optional<Order> existing = orderRepository.findByUserIdAndIdempotencyKey(userId, key);
+            if (existing.isPresent()) {
+                return withItems(existing.get());
+            }
+        }
+        Order order = cartSessionStore.checkout(userId,
+                () -> transactionTemplate.execute(status -> placeOrderFromCart(userId, key)));
+        return withItems(order);
+    }
+
+    private Order placeOrderFromCart(Long userId, String key) {
+        Long cartId = cartRepository.lockCartIdByUserID(userId);
+        if (cartId == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cart is empty");
+        }
+        BigDecimal totalPrice = cartDetailRepository.sumCartTotal(cartId);
+        Long orderId = orderRepository.insertIfAbsent(userId, PENDING_STATUS_ID, totalPrice, key);
+        if (orderId == null) {
+            // Một request song song với cùng key đã checkout
+            return orderRepository.findByUserIdAndIdempotencyKey(userId, key)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT, "Order is being created"));
+        }
+        int lines = orderItemRepository.insertFromCart(orderId, cartId);
+        if (lines == 0) {
+            // Ném lỗi để rollback header vừa tạo
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cart is empty");
+        }
+        cartDetailRepository.deleteAllByCartID(cartId);
+        logger.info("Checked out cart {} of user {} into order {} with {} items", cartId, userId, orderId, lines);
+
+        Order order = new Order();
+        order.setId(orderId);
+        order.setUserId(userId);
+        order.setTotalPrice(totalPrice);
+        order.setStatusId(PENDING_STATUS_ID);
+        order.setIdempotencyKey(key);
+        return order;
+    }
+
+    private Order withItems(Order order) {
+        order.setOrderItems(new LinkedHashSet<>(orderItemRepository.findByOrderId(order.getId())));
+        return order;
+    }
+
+    private String normalizeIdempotencyKey(String key) {
+        if (key == null || key.isBlank()) {
+            return null;
+        }
+        String trimmed = key.trim();
+        if (trimmed.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Idempotency key must not exceed " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+        return trimmed;
+    }
+
     // Update an order
+    @Transactional
     public Order updateOrder(Long id, Order orderDetails) {
         Optional<Order> optionalOrder = orderRepository.findById(id);
         if (optionalOrder.isPresent()) {
             Order order = optionalOrder.get();
+            boolean wasCompleted = Long.valueOf(COMPLETED_STATUS_ID).equals(order.getStatusId());
+            boolean completes = Long.valueOf(COMPLETED_STATUS_ID).equals(orderDetails.getStatusId());
+            LocalDateTime previousCompletedAt = order.getCompletedAt();
             order.setUserId(orderDetails.getUserId());
             order.setTotalPrice(orderDetails.getTotalPrice());
-            order.setStatusId(orderDetails.getStatusId());
-            return orderRepository.save(order);
+            if (!completes) {
+                order.setStatusId(orderDetails.getStatusId());
+                order.setCompletedAt(null);
+            }
+            Order saved = orderRepository.save(order);
+            if (completes && !wasCompleted) {
+                // Chuyển sang hoàn tất qua completeOrder để rollup doanh thu được cộng đúng một lần
+                completeOrder(id);
+                return orderRepository.findById(id).orElse(saved);
+            }
+            if (wasCompleted && !completes && previousCompletedAt != null) {
+                // Đơn rời trạng thái hoàn tất: tính lại ngày đã được cộng
+                orderRepository.flush();
+                salesAnalyticsService.rebuildDay(previousCompletedAt.toLocalDate());
+            }
+            return saved;
         } else {
             throw new RuntimeException("Order not found with ID: " + id);
         }
     }
 
+    // Đánh dấu đơn hoàn tất (sau khi thanh toán thành công) và cộng vào rollup doanh thu.
+    // Trả về false nếu đơn không tồn tại hoặc đã hoàn tất trước đó.
+    @Transactional
+    public boolean completeOrder(Long orderId) {
+        if (orderRepository.markCompleted(orderId) == 0) {
+            return false;
+        }
+        salesAnalyticsService.recordCompletedOrder(orderId);
+        return true;
+    }
+
 //    // Delete an order
 //    public void deleteOrder(Long id) {
 //        if (orderRepository.existsById(id)) {
@@ -106,17 +339,21 @@ public class OrderService {
 // Delete an order and its items if the status is 2
 @Transactional
 public void deleteOrder(Long orderId) {
-    Optional<Order> orderOptional = orderRepository.findById(orderId);
-    if (!orderOptional.isPresent()) {
-        throw new RuntimeException("Order not found with ID " + orderId);
-    }
+    Order order = orderRepository.findById(orderId)
+            .orElseThrow(() -> new RuntimeException("Order not found with ID " + orderId));
+    // Đơn đã hoàn tất nằm trong rollup doanh thu: tính lại ngày hoàn tất sau khi xóa
+    LocalDateTime completedAt = Long.valueOf(COMPLETED_STATUS_ID).equals(order.getStatusId()) ? order.getCompletedAt() : null;
 
     // In ra thông tin order trước khi xóa
     System.out.println("Deleting order with ID: " + orderId);
 
     try {
-        // Lấy Order và xóa, các OrderItem sẽ được xóa tự động do cascade
-        orderRepository.deleteById(orderId);
+        // Xóa OrderItem rồi Order bằng hai câu lệnh DELETE, không nạp entity
+        orderDetailRepository.deleteByOrderId(orderId);
+        orderRepository.deleteOrderById(orderId);
+        if (completedAt != null) {
+            salesAnalyticsService.rebuildDay(completedAt.toLocalDate());
+        }
     } catch (Exception e) {
         // Log chi tiết lỗi
         System.out.println("Error while deleting order: " + e.getMessage());
@@ -155,10 +392,12 @@ public void deleteOrder(Long orderId) {
             orderItemRepository.save(item);
         }
     }
+    @Transactional(readOnly = true)
     public List<OrderDetailsResponse> getOrdersByUserId(Long userId) {
         List<Order> orders = orderRepository.findByUserId(userId);
+        Map<Long, List<OrderItem>> itemsByOrder = findItemsWithCourse(orders);
         return orders.stream().map(order -> {
-            List<OrderItem> orderItems = orderItemRepository.findByOrderId(order.getId());
+            List<OrderItem> orderItems = itemsByOrder.getOrDefault(order.getId(), List.of());
             BigDecimal totalAmount = BigDecimal.ZERO; // Sử dụng giá trị mặc định hoặc logic khác
             return new OrderDetailsResponse(orderItems, order, totalAmount);
         }).collect(Collectors.toList());
@@ -0,0 +1,202 @@
+package org.example.sellingcourese.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.sellingcourese.Model.Order;
+import org.example.sellingcourese.Model.Payment;
+import org.example.sellingcourese.Model.PaymentInbox;
+import org.example.sellingcourese.Model.PaymentInboxStatus;
+import org.example.sellingcourese.Model.PaymentOutbox;
+import org.example.sellingcourese.Request.VNPayCallback;
+import org.example.sellingcourese.repository.OrderRepository;
+import org.example.sellingcourese.repository.PaymentInboxRepository;
+import org.example.sellingcourese.repository.PaymentOutboxRepository;
+import org.example.sellingcourese.repository.PaymentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+// Nhận callback/IPN của VNPay vào payment_inbox (idempotent theo vnp_TxnRef) và áp dụng ở background:
+// hoàn tất đơn hàng, ghi Payment và sự kiện outbox trong cùng một transaction, lỗi thì retry có backoff.
+@Service
+public class PaymentInboxService {
+    private static final Logger log = LoggerFactory.getLogger(PaymentInboxService.class);
+    // Thời gian worker giữ một dòng; quá hạn (ví dụ instance bị tắt) thì dòng được nhận lại
+    private static final int LEASE_SECONDS = 300;
+
+    @Autowired
+    private PaymentInboxRepository paymentInboxRepository;
+
+    @Autowired
+    private PaymentOutboxRepository paymentOutboxRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${payment.inbox.enabled:true}")
+    private boolean enabled;
+
+    @Value("${payment.inbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${payment.inbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${payment.inbox.initial-backoff-ms:2000}")
+    private long initialBackoffMs;
+
+    private final Counter received;
+    private final Counter duplicates;
+    private final Counter applied;
+    private final Counter failures;
+    private final Counter txnRefConflicts;
+
+    public PaymentInboxService(MeterRegistry meterRegistry) {
+        this.received = meterRegistry.counter("payment.inbox.received");
+        this.duplicates = meterRegistry.counter("payment.inbox.duplicates");
+        this.applied = meterRegistry.counter("payment.inbox.applied");
+        this.failures = meterRegistry.counter("payment.inbox.failures");
+        this.txnRefConflicts = meterRegistry.counter("payment.inbox.txn_ref_conflicts");
+    }
+
+    // Chỉ một câu INSERT trên thread của request; trả về false nếu giao dịch này đã được ghi nhận
+    public boolean receive(VNPayCallback callback, String source) {
+        boolean inserted = paymentInboxRepository.insertIfAbsent(callback.getTxnRef(), callback.getOrderId(), source,
+                callback.getAmount(), callback.getResponseCode(), callback.getTransactionStatus(),
+                callback.getTransactionNo()) > 0;
+        (inserted ? received : duplicates).increment();
+        if (!inserted) {
+            checkSameOrder(callback);
+        }
+        return inserted;
+    }
+
+    // Callback trùng vnp_TxnRef nhưng khác đơn hàng sẽ bị bỏ qua; không được xảy ra với TxnRef do nextTxnRef tạo,
+    // nên ghi lỗi để phát hiện (ví dụ TxnRef ngẫu nhiên cũ còn trong URL thanh toán chưa hết hạn)
+    private void checkSameOrder(VNPayCallback callback) {
+        paymentInboxRepository.findByTxnRef(callback.getTxnRef())
+                .filter(existing -> !Objects.equals(existing.getOrderId(), callback.getOrderId()))
+                .ifPresent(existing -> {
+                    txnRefConflicts.increment();
+                    log.error("Payment {} for order {} ignored: the same vnp_TxnRef was already received for order {}",
+                            callback.getTxnRef(), callback.getOrderId(), existing.getOrderId());
+                });
+    }
+
+    // Phản hồi IPN theo mã của VNPay: 00 đã ghi nhận, 01 không có đơn, 02 đơn đã xác nhận, 04 sai số tiền
+    public Map<String, String> acknowledgeIpn(VNPayCallback callback) {
+        Optional<Order> order = callback.getOrderId() == null
+                ? Optional.empty() : orderRepository.findById(callback.getOrderId());
+        if (order.isEmpty()) {
+            return Map.of("RspCode", "01", "Message", "Order not found");
+        }
+        if (callback.getAmount() == null || callback.getAmount().compareTo(order.get().getTotalPrice()) != 0) {
+            return Map.of("RspCode", "04", "Message", "Invalid amount");
+        }
+        if (!receive(callback, "IPN") && order.get().getCompletedAt() != null) {
+            return Map.of("RspCode", "02", "Message", "Order already confirmed");
+        }
+        return Map.of("RspCode", "00", "Message", "Confirm Success");
+    }
+
+    @Scheduled(fixedDelayString = "${payment.inbox.poll-interval-ms:500}")
+    public void processPending() {
+        if (!enabled) {
+            return;
+        }
+        List<PaymentInbox> batch;
+        do {
+            batch = paymentInboxRepository.claimBatch(batchSize, LEASE_SECONDS);
+            batch.forEach(this::process);
+        } while (batch.size() == batchSize);
+    }
+
+    private void process(PaymentInbox entry) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> apply(entry));
+            applied.increment();
+        } catch (RuntimeException e) {
+            failures.increment();
+            if (entry.getAttempts() >= maxAttempts) {
+                log.error("Payment {} for order {} failed after {} attempts: {}",
+                        entry.getTxnRef(), entry.getOrderId(), entry.getAttempts(), e.getMessage(), e);
+                paymentInboxRepository.markFinished(entry.getId(), PaymentInboxStatus.FAILED, e.getMessage());
+            } else {
+                long backoff = initialBackoffMs << Math.min(entry.getAttempts() - 1, 10);
+                log.warn("Payment {} for order {} failed (attempt {}/{}), retrying in {} ms: {}",
+                        entry.getTxnRef(), entry.getOrderId(), entry.getAttempts(), maxAttempts, backoff, e.getMessage());
+                paymentInboxRepository.scheduleRetry(entry.getId(),
+                        LocalDateTime.now().plusNanos(backoff * 1_000_000), e.getMessage());
+            }
+        }
+    }
+
+    // Chạy trong một transaction: thay đổi đơn hàng, Payment, outbox và trạng thái inbox cùng commit hoặc cùng rollback
+    private void apply(PaymentInbox entry) {
+        Order order = entry.getOrderId() == null ? null : orderRepository.findById(entry.getOrderId()).orElse(null);
+        if (order == null) {
+            paymentInboxRepository.markFinished(entry.getId(), PaymentInboxStatus.FAILED, "Order not found");
+            return;
+        }
+        if (!entry.isSuccessful()) {
+            recordPayment(entry, "FAILED");
+            enqueue(PaymentOutbox.PAYMENT_FAILED, entry, order);
+            paymentInboxRepository.markFinished(entry.getId(), PaymentInboxStatus.DONE, null);
+            return;
+        }
+        if (entry.getAmount() == null || entry.getAmount().compareTo(order.getTotalPrice()) != 0) {
+            log.warn("Payment {} amount {} does not match order {} total {}",
+                    entry.getTxnRef(), entry.getAmount(), order.getId(), order.getTotalPrice());
+            paymentInboxRepository.markFinished(entry.getId(), PaymentInboxStatus.FAILED, "Amount mismatch");
+            return;
+        }
+        // completeOrder là UPDATE có điều kiện: giao dịch thứ hai cho cùng đơn không ghi Payment lần nữa
+        if (orderService.completeOrder(order.getId())) {
+            recordPayment(entry, "COMPLETED");
+            enqueue(PaymentOutbox.ORDER_PAID, entry, order);
+            paymentInboxRepository.markFinished(entry.getId(), PaymentInboxStatus.DONE, null);
+        } else {
+            paymentInboxRepository.markFinished(entry.getId(), PaymentInboxStatus.DONE, "Order already completed");
+        }
+    }
+
+    private void recordPayment(PaymentInbox entry, String status) {
+        Payment payment = new Payment();
+        payment.setOrderId(entry.getOrderId());
+        payment.setAmount(entry.getAmount() != null ? entry.getAmount() : BigDecimal.ZERO);
+        payment.setPaymentDate(LocalDateTime.now());
+        payment.setStatus(status);
+        paymentRepository.save(payment);
+    }
+
+    private void enqueue(String eventType, PaymentInbox entry, Order order) {
+        PaymentOutbox event = new PaymentOutbox();
+        event.setEventType(eventType);
+        event.setOrderId(order.getId());
+        event.setUserId(order.getUserId());
+        event.setAmount(entry.getAmount());
+        event.setTxnRef(entry.getTxnRef());
+        event.setCreatedAt(LocalDateTime.now());
+        paymentOutboxRepository.save(event);
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.sellingcourese.Service;
+
+import org.example.sellingcourese.Model.PaymentOutbox;
+import org.example.sellingcourese.event.OrderPaidEvent;
+import org.example.sellingcourese.event.PaymentFailedEvent;
+import org.example.sellingcourese.repository.PaymentOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Phát các sự kiện trong payment_outbox (at-least-once): dòng chỉ được đánh dấu published khi listener chạy xong
+@Component
+public class PaymentOutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(PaymentOutboxRelay.class);
+
+    @Autowired
+    private PaymentOutboxRepository paymentOutboxRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${payment.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${payment.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Scheduled(fixedDelayString = "${payment.outbox.poll-interval-ms:1000}")
+    public void relay() {
+        Integer published;
+        do {
+            published = transactionTemplate.execute(status -> relayBatch());
+        } while (published != null && published == batchSize);
+    }
+
+    // Các dòng bị khóa tới khi transaction kết thúc; thay đổi trên entity được ghi khi commit
+    private int relayBatch() {
+        List<PaymentOutbox> events = paymentOutboxRepository.lockUnpublished(batchSize, maxAttempts);
+        for (PaymentOutbox event : events) {
+            try {
+                publish(event);
+                event.setPublishedAt(LocalDateTime.now());
+            } catch (RuntimeException e) {
+                event.setAttempts(event.getAttempts() + 1);
+                event.setLastError(e.getMessage());
+                log.warn("Outbox event {} ({}) for order {} failed (attempt {}/{}): {}", event.getId(),
+                        event.getEventType(), event.getOrderId(), event.getAttempts(), maxAttempts, e.getMessage());
+            }
+        }
+        return events.size();
+    }
+
+    private void publish(PaymentOutbox event) {
+        switch (event.getEventType()) {
+            case PaymentOutbox.ORDER_PAID -> eventPublisher.publishEvent(
+                    new OrderPaidEvent(event.getOrderId(), event.getUserId(), event.getAmount(), event.getTxnRef()));
+            case PaymentOutbox.PAYMENT_FAILED -> eventPublisher.publishEvent(
+                    new PaymentFailedEvent(event.getOrderId(), event.getUserId(), event.getTxnRef()));
+            default -> log.warn("Unknown outbox event type {} (id {})", event.getEventType(), event.getId());
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package org.example.sellingcourese.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.example.sellingcourese.Model.Order;
+import org.example.sellingcourese.Request.VNPayCallback;
+import org.example.sellingcourese.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Đối soát các đơn còn status 2 sau khi URL thanh toán đã hết hạn: hỏi VNPay qua querydr
+// (song song có giới hạn + giới hạn tốc độ), kết quả đi qua payment_inbox như callback/IPN bình thường.
+@Service
+public class PaymentReconciler {
+    private static final Logger log = LoggerFactory.getLogger(PaymentReconciler.class);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private VNPayService vnPayService;
+
+    @Autowired
+    private PaymentInboxService paymentInboxService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${payment.reconcile.enabled:true}")
+    private boolean enabled;
+
+    @Value("${payment.reconcile.page-size:100}")
+    private int pageSize;
+
+    // URL thanh toán hết hạn sau 15 phút, đợi thêm một chút cho callback/IPN tới trước
+    @Value("${payment.reconcile.stale-after-minutes:20}")
+    private long staleAfterMinutes;
+
+    @Value("${payment.reconcile.max-age-hours:48}")
+    private long maxAgeHours;
+
+    @Value("${payment.reconcile.recheck-minutes:30}")
+    private long recheckMinutes;
+
+    private final ExecutorService executor;
+    private final long permitIntervalNanos;
+    private final Object rateLock = new Object();
+    private long nextPermitNanos;
+
+    private final Timer runTimer;
+    private final Counter checked;
+    private final Counter errors;
+    private final Counter notFinal;
+    private final MeterRegistry meterRegistry;
+    // Tuổi (giây) của đơn chờ cũ nhất được đối soát ở lần chạy gần nhất
+    private final AtomicLong lagSeconds = new AtomicLong();
+
+    public PaymentReconciler(MeterRegistry meterRegistry,
+                             @Value("${payment.reconcile.parallelism:4}") int parallelism,
+                             @Value("${payment.reconcile.requests-per-second:10}") double requestsPerSecond) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "payment-reconcile-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.permitIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.meterRegistry = meterRegistry;
+        this.runTimer = meterRegistry.timer("payment.reconcile.run");
+        this.checked = meterRegistry.counter("payment.reconcile.checked");
+        this.errors = meterRegistry.counter("payment.reconcile.errors");
+        this.notFinal = meterRegistry.counter("payment.reconcile.not_final");
+        meterRegistry.gauge("payment.reconcile.lag.seconds", lagSeconds);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.reconcile.interval-ms:300000}",
+            initialDelayString = "${payment.reconcile.initial-delay-ms:120000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime oldest = now.minusHours(maxAgeHours);
+        LocalDateTime newest = now.minusMinutes(staleAfterMinutes);
+        LocalDateTime recheckBefore = now.minusMinutes(recheckMinutes);
+
+        int orders = 0;
+        int found = 0;
+        LocalDateTime oldestRequest = null;
+        long afterId = 0;
+        List<Order> page;
+        do {
+            page = orderRepository.findReconcileCandidates(oldest, newest, recheckBefore, afterId,
+                    PageRequest.of(0, pageSize));
+            if (page.isEmpty()) {
+                break;
+            }
+            for (Order order : page) {
+                if (oldestRequest == null || order.getVnpRequestedAt().isBefore(oldestRequest)) {
+                    oldestRequest = order.getVnpRequestedAt();
+                }
+            }
+            found += reconcilePage(page);
+            orders += page.size();
+            afterId = page.get(page.size() - 1).getId();
+        } while (page.size() == pageSize);
+
+        lagSeconds.set(oldestRequest == null ? 0 : Duration.between(oldestRequest, now).getSeconds());
+        long elapsedNanos = System.nanoTime() - started;
+        runTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (orders > 0) {
+            double seconds = Math.max(elapsedNanos / 1e9, 0.001);
+            log.info("Reconciled {} pending orders in {} ms ({} orders/s), {} transactions found at VNPay, lag {} s",
+                    orders, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), String.format("%.1f", orders / seconds),
+                    found, lagSeconds.get());
+        }
+    }
+
+    // Hỏi VNPay cho cả trang song song, rồi ghi kết quả trong một transaction
+    private int reconcilePage(List<Order> page) {
+        List<CompletableFuture<Optional<VNPayCallback>>> queries = page.stream()
+                .map(order -> CompletableFuture.supplyAsync(() -> query(order), executor))
+                .toList();
+
+        List<VNPayCallback> results = new ArrayList<>();
+        List<Long> reconciledIds = new ArrayList<>();
+        for (int i = 0; i < page.size(); i++) {
+            Order order = page.get(i);
+            try {
+                Optional<VNPayCallback> result = queries.get(i).join();
+                reconciledIds.add(order.getId());
+                if (result.isEmpty()) {
+                    continue;
+                }
+                VNPayCallback callback = result.get();
+                if (!callback.isFinal()) {
+                    // Chưa có kết quả cuối: không ghi vào inbox (sẽ chiếm txn_ref), hỏi lại sau recheck-minutes
+                    notFinal.increment();
+                    continue;
+                }
+                results.add(callback);
+                countMismatches(order, callback);
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof SecurityException) {
+                    mismatch("signature");
+                }
+                errors.increment();
+                log.warn("querydr failed for order {} ({}): {}", order.getId(), order.getVnpTxnRef(), cause.getMessage());
+            }
+        }
+
+        // Đơn lỗi khi gọi API không được đánh dấu, lần chạy sau thử lại
+        transactionTemplate.executeWithoutResult(status -> {
+            results.forEach(callback -> paymentInboxService.receive(callback, "RECONCILE"));
+            if (!reconciledIds.isEmpty()) {
+                orderRepository.markReconciled(reconciledIds);
+            }
+        });
+        return results.size();
+    }
+
+    private Optional<VNPayCallback> query(Order order) {
+        acquirePermit();
+        Optional<VNPayCallback> result = vnPayService.queryTransaction(order.getId(), order.getVnpTxnRef(),
+                order.getVnpCreateDate());
+        checked.increment();
+        return result;
+    }
+
+    // VNPay có giao dịch nhưng đơn vẫn đang chờ: callback/IPN đã bị mất
+    private void countMismatches(Order order, VNPayCallback callback) {
+        if (callback.isSuccessful()) {
+            mismatch("paid_but_pending");
+            if (callback.getAmount() == null || order.getTotalPrice() == null
+                    || callback.getAmount().compareTo(order.getTotalPrice()) != 0) {
+                mismatch("amount");
+            }
+        }
+    }
+
+    private void mismatch(String type) {
+        meterRegistry.counter("payment.reconcile.mismatches", "type", type).increment();
+    }
+
+    // Giãn đều các request trên mọi thread: tối đa requests-per-second lần gọi API mỗi giây
+    private void acquirePermit() {
+        long waitNanos;
+        synchronized (rateLock) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextPermitNanos);
+            nextPermitNanos = slot + permitIntervalNanos;
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,86 @@
+package org.example.sellingcourese.Service;
+
+import org.example.sellingcourese.Request.CourseSalesDTO;
+import org.example.sellingcourese.Request.DailySalesDTO;
+import org.example.sellingcourese.Request.TeacherSalesDTO;
+import org.example.sellingcourese.repository.CourseSalesDailyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Doanh thu / số lượng bán đọc từ bảng rollup course_sales_daily, không quét lịch sử đơn hàng
+@Service
+public class SalesAnalyticsService {
+    private static final Logger log = LoggerFactory.getLogger(SalesAnalyticsService.class);
+    private static final int DEFAULT_RANGE_DAYS = 30;
+    private static final int MAX_RANGE_DAYS = 366;
+    private static final int DEFAULT_TOP = 10;
+    private static final int MAX_TOP = 100;
+
+    @Autowired
+    private CourseSalesDailyRepository courseSalesDailyRepository;
+
+    // Gọi trong cùng transaction với UPDATE chuyển đơn sang trạng thái 3
+    @Transactional
+    public void recordCompletedOrder(Long orderId) {
+        courseSalesDailyRepository.addCompletedOrder(orderId);
+    }
+
+    // Tính lại một ngày từ dữ liệu gốc, dùng khi một đơn rời trạng thái hoàn tất
+    @Transactional
+    public void rebuildDay(LocalDate day) {
+        courseSalesDailyRepository.deleteDay(day);
+        courseSalesDailyRepository.insertRange(day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+    }
+
+    @Transactional
+    public void rebuildAll() {
+        int deleted = courseSalesDailyRepository.deleteAllRows();
+        int inserted = courseSalesDailyRepository.insertAll();
+        log.info("Rebuilt course_sales_daily: {} rows replaced by {}", deleted, inserted);
+    }
+
+    @Transactional(readOnly = true)
+    public List<DailySalesDTO> getDailySales(LocalDate from, LocalDate to) {
+        LocalDate[] range = resolveRange(from, to);
+        return courseSalesDailyRepository.findDailyTotals(range[0], range[1]);
+    }
+
+    @Transactional(readOnly = true)
+    public List<CourseSalesDTO> getTopCourses(LocalDate from, LocalDate to, Integer limit) {
+        LocalDate[] range = resolveRange(from, to);
+        return courseSalesDailyRepository.findTopCourses(range[0], range[1], PageRequest.of(0, resolveLimit(limit)));
+    }
+
+    @Transactional(readOnly = true)
+    public List<TeacherSalesDTO> getTopTeachers(LocalDate from, LocalDate to, Integer limit) {
+        LocalDate[] range = resolveRange(from, to);
+        return courseSalesDailyRepository.findTopTeachers(range[0], range[1], PageRequest.of(0, resolveLimit(limit)));
+    }
+
+    // Mặc định 30 ngày gần nhất (tính cả hôm nay)
+    private LocalDate[] resolveRange(LocalDate from, LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(DEFAULT_RANGE_DAYS - 1);
+        if (start.isAfter(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must not be after to");
+        }
+        if (start.plusDays(MAX_RANGE_DAYS).isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Date range must not exceed " + MAX_RANGE_DAYS + " days");
+        }
+        return new LocalDate[]{start, end};
+    }
+
+    private int resolveLimit(Integer limit) {
+        return limit == null ? DEFAULT_TOP : Math.max(1, Math.min(limit, MAX_TOP));
+    }
+}
@@ -2,26 +2,49 @@ package org.example.sellingcourese.Service;
 
 import jakarta.servlet.http.HttpServletRequest;
 import org.example.sellingcourese.Config.VNPayConfig;
+import org.example.sellingcourese.Config.VNPaySigner;
+import org.example.sellingcourese.Request.VNPayCallback;
+import org.example.sellingcourese.repository.OrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
 @Service
 public class VNPayService {
+    private static final String VERSION = "2.1.0";
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private final RestClient restClient;
+
+    public VNPayService(@Value("${vnpay.api-url:https://sandbox.vnpayment.vn/merchant_webapi/api/transaction}") String apiUrl,
+                        @Value("${vnpay.api-timeout-ms:10000}") int timeoutMs) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMs);
+        requestFactory.setReadTimeout(timeoutMs);
+        this.restClient = RestClient.builder().baseUrl(apiUrl).requestFactory(requestFactory).build();
+    }
 
     public String createOrder(int total, String orderInfor, String urlReturn){
-        String vnp_Version = "2.1.0";
+        String vnp_Version = VERSION;
         String vnp_Command = "pay";
-        String vnp_TxnRef = VNPayConfig.getRandomNumber(8);
+        Long orderId = parseOrderId(orderInfor);
+        String vnp_TxnRef = nextTxnRef(orderId);
         String vnp_IpAddr = "127.0.0.1";
         String vnp_TmnCode = VNPayConfig.vnp_TmnCode;
         String orderType = "order-type";
 
-        Map<String, String> vnp_Params = new HashMap<>();
+        // TreeMap: tham số đã theo thứ tự VNPay yêu cầu khi ký, không cần sort lại
+        SortedMap<String, String> vnp_Params = new TreeMap<>();
         vnp_Params.put("vnp_Version", vnp_Version);
         vnp_Params.put("vnp_Command", vnp_Command);
         vnp_Params.put("vnp_TmnCode", vnp_TmnCode);
@@ -48,65 +71,18 @@ public class VNPayService {
         String vnp_ExpireDate = formatter.format(cld.getTime());
         vnp_Params.put("vnp_ExpireDate", vnp_ExpireDate);
 
-        List fieldNames = new ArrayList(vnp_Params.keySet());
-        Collections.sort(fieldNames);
-        StringBuilder hashData = new StringBuilder();
-        StringBuilder query = new StringBuilder();
-        Iterator itr = fieldNames.iterator();
-        while (itr.hasNext()) {
-            String fieldName = (String) itr.next();
-            String fieldValue = (String) vnp_Params.get(fieldName);
-            if ((fieldValue != null) && (fieldValue.length() > 0)) {
-                //Build hash data
-                hashData.append(fieldName);
-                hashData.append('=');
-                try {
-                    hashData.append(URLEncoder.encode(fieldValue, StandardCharsets.US_ASCII.toString()));
-                    //Build query
-                    query.append(URLEncoder.encode(fieldName, StandardCharsets.US_ASCII.toString()));
-                    query.append('=');
-                    query.append(URLEncoder.encode(fieldValue, StandardCharsets.US_ASCII.toString()));
-                } catch (UnsupportedEncodingException e) {
-                    e.printStackTrace();
-                }
-                if (itr.hasNext()) {
-                    query.append('&');
-                    hashData.append('&');
-                }
-            }
+        // Lưu TxnRef + CreateDate vào đơn hàng để đối soát được nếu callback/IPN không tới
+        if (orderId != null) {
+            orderRepository.recordPaymentRequest(orderId, vnp_TxnRef, vnp_CreateDate);
         }
-        String queryUrl = query.toString();
-        String vnp_SecureHash = VNPayConfig.hmacSHA512(VNPayConfig.vnp_HashSecret, hashData.toString());
-        queryUrl += "&vnp_SecureHash=" + vnp_SecureHash;
+
+        String queryUrl = VNPaySigner.forKey(VNPayConfig.vnp_HashSecret).signedQuery(vnp_Params);
         String paymentUrl = VNPayConfig.vnp_PayUrl + "?" + queryUrl;
         return paymentUrl;
     }
 
     public int orderReturn(HttpServletRequest request){
-        Map fields = new HashMap();
-        for (Enumeration params = request.getParameterNames(); params.hasMoreElements();) {
-            String fieldName = null;
-            String fieldValue = null;
-            try {
-                fieldName = URLEncoder.encode((String) params.nextElement(), StandardCharsets.US_ASCII.toString());
-                fieldValue = URLEncoder.encode(request.getParameter(fieldName), StandardCharsets.US_ASCII.toString());
-            } catch (UnsupportedEncodingException e) {
-                e.printStackTrace();
-            }
-            if ((fieldValue != null) && (fieldValue.length() > 0)) {
-                fields.put(fieldName, fieldValue);
-            }
-        }
-
-        String vnp_SecureHash = request.getParameter("vnp_SecureHash");
-        if (fields.containsKey("vnp_SecureHashType")) {
-            fields.remove("vnp_SecureHashType");
-        }
-        if (fields.containsKey("vnp_SecureHash")) {
-            fields.remove("vnp_SecureHash");
-        }
-        String signValue = VNPayConfig.hashAllFields(fields);
-        if (signValue.equals(vnp_SecureHash)) {
+        if (hasValidSignature(request)) {
             if ("00".equals(request.getParameter("vnp_TransactionStatus"))) {
                 return 1;
             } else {
@@ -117,4 +93,111 @@ public class VNPayService {
         }
     }
 
+    // Đọc callback/IPN đã được ký đúng; null nếu chữ ký sai hoặc thiếu vnp_TxnRef
+    public VNPayCallback parseCallback(HttpServletRequest request) {
+        String txnRef = request.getParameter("vnp_TxnRef");
+        if (txnRef == null || txnRef.isBlank() || !hasValidSignature(request)) {
+            return null;
+        }
+        BigDecimal amount = null;
+        String vnpAmount = request.getParameter("vnp_Amount");
+        if (vnpAmount != null) {
+            try {
+                amount = new BigDecimal(vnpAmount).movePointLeft(2);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return new VNPayCallback(txnRef, parseOrderId(request.getParameter("vnp_OrderInfo")), amount,
+                request.getParameter("vnp_ResponseCode"), request.getParameter("vnp_TransactionStatus"),
+                request.getParameter("vnp_TransactionNo"));
+    }
+
+    // Hỏi trạng thái giao dịch qua API querydr. Trả về empty nếu VNPay không có giao dịch (vnp_ResponseCode khác 00);
+    // ném SecurityException nếu chữ ký của phản hồi không đúng.
+    public Optional<VNPayCallback> queryTransaction(Long orderId, String txnRef, String transactionDate) {
+        String requestId = UUID.randomUUID().toString().replace("-", "");
+        String createDate = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+        String ipAddr = "127.0.0.1";
+        String orderInfo = "Doi soat don hang:" + orderId;
+        VNPaySigner signer = VNPaySigner.forKey(VNPayConfig.vnp_HashSecret);
+
+        Map<String, String> body = new LinkedHashMap<>();
+        body.put("vnp_RequestId", requestId);
+        body.put("vnp_Version", VERSION);
+        body.put("vnp_Command", "querydr");
+        body.put("vnp_TmnCode", VNPayConfig.vnp_TmnCode);
+        body.put("vnp_TxnRef", txnRef);
+        body.put("vnp_OrderInfo", orderInfo);
+        body.put("vnp_TransactionDate", transactionDate);
+        body.put("vnp_CreateDate", createDate);
+        body.put("vnp_IpAddr", ipAddr);
+        body.put("vnp_SecureHash", signer.sign(String.join("|", requestId, VERSION, "querydr",
+                VNPayConfig.vnp_TmnCode, txnRef, transactionDate, createDate, ipAddr, orderInfo)));
+
+        Map<String, Object> response = restClient.post()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body)
+                .retrieve()
+                .body(new ParameterizedTypeReference<Map<String, Object>>() {});
+        if (response == null) {
+            throw new IllegalStateException("Empty querydr response for " + txnRef);
+        }
+        String responseHashData = String.join("|", field(response, "vnp_ResponseId"), field(response, "vnp_Command"),
+                field(response, "vnp_ResponseCode"), field(response, "vnp_Message"), field(response, "vnp_TmnCode"),
+                field(response, "vnp_TxnRef"), field(response, "vnp_Amount"), field(response, "vnp_BankCode"),
+                field(response, "vnp_PayDate"), field(response, "vnp_TransactionNo"),
+                field(response, "vnp_TransactionType"), field(response, "vnp_TransactionStatus"),
+                field(response, "vnp_OrderInfo"), field(response, "vnp_PromotionCode"),
+                field(response, "vnp_PromotionAmount"));
+        if (!signer.matches(responseHashData, field(response, "vnp_SecureHash"))) {
+            throw new SecurityException("Invalid querydr response signature for " + txnRef);
+        }
+        String responseCode = field(response, "vnp_ResponseCode");
+        if (!"00".equals(responseCode)) {
+            return Optional.empty();
+        }
+        BigDecimal amount = field(response, "vnp_Amount").isEmpty()
+                ? null : new BigDecimal(field(response, "vnp_Amount")).movePointLeft(2);
+        return Optional.of(new VNPayCallback(txnRef, orderId, amount, responseCode,
+                field(response, "vnp_TransactionStatus"), field(response, "vnp_TransactionNo")));
+    }
+
+    // vnp_TxnRef duy nhất cho mỗi lần tạo URL thanh toán: orderId (0 nếu không có) + giá trị sequence đệm đủ 10 chữ số.
+    // Phần đuôi cố định độ dài nên hai cặp (orderId, sequence) khác nhau không bao giờ cho cùng một chuỗi.
+    private String nextTxnRef(Long orderId) {
+        return (orderId != null ? orderId : 0L) + String.format("%010d", orderRepository.nextTxnRefSequence());
+    }
+
+    private String field(Map<String, Object> response, String name) {
+        Object value = response.get(name);
+        return value == null ? "" : value.toString();
+    }
+
+    // vnp_OrderInfo có dạng "<mô tả>:<orderId>" (frontend tạo khi gọi /submitOrder)
+    private Long parseOrderId(String orderInfo) {
+        if (orderInfo == null) {
+            return null;
+        }
+        int separator = orderInfo.lastIndexOf(':');
+        try {
+            return Long.parseLong(orderInfo.substring(separator + 1).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean hasValidSignature(HttpServletRequest request) {
+        SortedMap<String, String> fields = new TreeMap<>();
+        for (Map.Entry<String, String[]> param : request.getParameterMap().entrySet()) {
+            String fieldName = param.getKey();
+            if (!"vnp_SecureHash".equals(fieldName) && !"vnp_SecureHashType".equals(fieldName)
+                    && param.getValue().length > 0) {
+                fields.put(fieldName, param.getValue()[0]);
+            }
+        }
+        return VNPaySigner.forKey(VNPayConfig.vnp_HashSecret)
+                .verify(fields, request.getParameter("vnp_SecureHash"));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package org.example.sellingcourese.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Set;
+
+// Phát ra sau mỗi thay đổi Course để các cache liên quan tự invalidate
+@Getter
+@AllArgsConstructor
+public class CourseChangedEvent {
+    private final Long courseId;
+    // Các status có danh sách bị ảnh hưởng (status cũ và status mới), null = tất cả
+    private final Set<Integer> affectedStatuses;
+}
@@ -0,0 +1,16 @@
+package org.example.sellingcourese.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+// Phát ra (qua payment_outbox) sau khi thanh toán VNPay thành công và đơn hàng đã hoàn tất
+@Getter
+@AllArgsConstructor
+public class OrderPaidEvent {
+    private final Long orderId;
+    private final Long userId;
+    private final BigDecimal amount;
+    private final String txnRef;
+}
@@ -0,0 +1,13 @@
+package org.example.sellingcourese.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Phát ra (qua payment_outbox) khi VNPay báo giao dịch không thành công
+@Getter
+@AllArgsConstructor
+public class PaymentFailedEvent {
+    private final Long orderId;
+    private final Long userId;
+    private final String txnRef;
+}
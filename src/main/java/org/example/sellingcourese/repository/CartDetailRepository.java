@@ -1,24 +1,54 @@
 package org.example.sellingcourese.repository;
 
 import org.example.sellingcourese.Model.CartDetail;
+import org.example.sellingcourese.Request.CartDTO;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 
 public interface CartDetailRepository extends JpaRepository<CartDetail, Long> {
-    @Modifying
+    // Xóa hàng loạt bằng một câu lệnh DELETE, không nạp entity; xóa cả persistence context để tránh entity cũ
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Transactional
     @Query("DELETE FROM CartDetail cd WHERE cd.courseID = :courseID")
-    void deleteByCourseID(@Param("courseID") Long courseID);
-    void deleteAllByCartID(Long cartID);
+    int deleteByCourseID(@Param("courseID") Long courseID);
 
-    void deleteByCartID(Long cartID);
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("DELETE FROM CartDetail cd WHERE cd.cartID = :cartID")
+    int deleteAllByCartID(@Param("cartID") Long cartID);
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("DELETE FROM CartDetail cd WHERE cd.cartID = :cartID")
+    int deleteByCartID(@Param("cartID") Long cartID);
+
+    // Tổng tiền của cart theo giá course hiện tại (giá trong CartDetails do client gửi lên), bỏ course đang bị xóa
+    @Query("SELECT COALESCE(SUM(co.price * cd.quantity), 0) FROM CartDetail cd JOIN Course co ON co.id = cd.courseID " +
+            "WHERE cd.cartID = :cartID AND co.deletedAt IS NULL")
+    BigDecimal sumCartTotal(@Param("cartID") Long cartID);
+
+    // Xóa tối đa :limit dòng của một course; gọi lặp cho tới khi trả về < limit để mỗi transaction ngắn
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query(value = "DELETE FROM \"CartDetails\" WHERE \"CartDetailID\" IN (" +
+            "SELECT \"CartDetailID\" FROM \"CartDetails\" WHERE \"CourseID\" = :courseID LIMIT :limit)", nativeQuery = true)
+    int deleteChunkByCourseID(@Param("courseID") Long courseID, @Param("limit") int limit);
     List<CartDetail> findByCartID(Long cartID);
     Optional<CartDetail> findByCartIDAndCourseID(Long cartID, Long courseID);
     List<CartDetail> findAllByCartID(Long cartID);
+
+    // Chi tiết giỏ hàng kèm thông tin cart và course trong một truy vấn (course đã xóa -> title/description null)
+    @Query("SELECT new org.example.sellingcourese.Request.CartDTO(" +
+            "cd.cartDetailID, cd.cartID, c.userID, c.createdDate, cd.courseID, cd.quantity, cd.price, " +
+            "co.title, co.description) " +
+            "FROM CartDetail cd JOIN cd.cart c LEFT JOIN cd.course co " +
+            "WHERE cd.cartID = :cartID ORDER BY cd.cartDetailID")
+    List<CartDTO> findCartDTOsByCartID(@Param("cartID") Long cartID);
 }
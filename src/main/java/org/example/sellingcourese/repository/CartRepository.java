@@ -2,7 +2,11 @@ package org.example.sellingcourese.repository;
 
 import org.example.sellingcourese.Model.Cart;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -11,5 +15,18 @@ import java.util.Optional;
 public interface CartRepository extends JpaRepository<Cart, Long> {
 
     List<Cart> findByUserID(Long userID);
-    void deleteByUserID(Long userID);
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("DELETE FROM Cart c WHERE c.userID = :userID")
+    int deleteByUserID(@Param("userID") Long userID);
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("DELETE FROM Cart c WHERE c.cartID = :cartID")
+    int deleteByCartID(@Param("cartID") Long cartID);
+
+    // Khóa cart của user cho tới hết transaction (checkout), null nếu user chưa có cart
+    @Transactional
+    @Query(value = "SELECT \"CartID\" FROM \"Carts\" WHERE \"UserID\" = :userID FOR UPDATE", nativeQuery = true)
+    Long lockCartIdByUserID(@Param("userID") Long userID);
 }
@@ -1,13 +1,130 @@
 package org.example.sellingcourese.repository;
 
 import org.example.sellingcourese.Model.Course;
+import org.example.sellingcourese.Model.MediaStatus;
+import org.example.sellingcourese.Request.CoursePriceView;
+import org.example.sellingcourese.Request.CourseSearchResult;
+import org.example.sellingcourese.Request.CourseSummaryDTO;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface CourseRepository extends JpaRepository<Course, Long> {
-    List<Course> findByTitleContainingIgnoreCase(String title);
-    List<Course> findByStatus(Integer status);
-    List<Course> findByCategoryId(Long categoryId);
+    String SUMMARY_SELECT = "SELECT new org.example.sellingcourese.Request.CourseSummaryDTO(" +
+            "c.id, c.title, c.thumbnailUrl, c.price, c.teacherId, c.categoryId, c.videoUrl, c.status) FROM Course c ";
 
+    // tsvector của một course: title (A) > tên category (B) > description (C)
+    String SEARCH_VECTOR_EXPR = "setweight(to_tsvector('simple', coalesce(c.title, '')), 'A') || " +
+            "setweight(to_tsvector('simple', coalesce((SELECT cat.name FROM \"Categories\" cat WHERE cat.id = c.category_id), '')), 'B') || " +
+            "setweight(to_tsvector('simple', coalesce(c.description, '')), 'C')";
+
+    // Course đã đánh dấu xóa (deletedAt) bị ẩn khỏi mọi danh sách và tìm kiếm ngay, trước khi xóa xong
+    List<Course> findByTitleContainingIgnoreCaseAndDeletedAtIsNull(String title);
+    List<Course> findByStatusAndDeletedAtIsNull(Integer status);
+    List<Course> findByCategoryIdAndDeletedAtIsNull(Long categoryId);
+
+    // Giá hiện tại của nhiều course trong một truy vấn; course không tồn tại thì không có trong kết quả
+    @Query("SELECT c.id AS id, c.price AS price FROM Course c WHERE c.id IN :ids AND c.deletedAt IS NULL")
+    List<CoursePriceView> findPricesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Keyset pagination cho catalog: seek theo (id) hoặc (price, id) / (title, id), không dùng OFFSET
+    @Query(SUMMARY_SELECT + "WHERE c.deletedAt IS NULL AND (:status IS NULL OR c.status = :status) AND c.id > :lastId ORDER BY c.id")
+    List<CourseSummaryDTO> findSummariesAfterId(@Param("status") Integer status, @Param("lastId") Long lastId,
+                                                Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE c.deletedAt IS NULL AND (:status IS NULL OR c.status = :status) ORDER BY c.price, c.id")
+    List<CourseSummaryDTO> findSummariesOrderByPrice(@Param("status") Integer status, Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE c.deletedAt IS NULL AND (:status IS NULL OR c.status = :status) " +
+            "AND (c.price > :lastPrice OR (c.price = :lastPrice AND c.id > :lastId)) ORDER BY c.price, c.id")
+    List<CourseSummaryDTO> findSummariesAfterPrice(@Param("status") Integer status, @Param("lastPrice") BigDecimal lastPrice,
+                                                   @Param("lastId") Long lastId, Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE c.deletedAt IS NULL AND (:status IS NULL OR c.status = :status) ORDER BY c.title, c.id")
+    List<CourseSummaryDTO> findSummariesOrderByTitle(@Param("status") Integer status, Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE c.deletedAt IS NULL AND (:status IS NULL OR c.status = :status) " +
+            "AND (c.title > :lastTitle OR (c.title = :lastTitle AND c.id > :lastId)) ORDER BY c.title, c.id")
+    List<CourseSummaryDTO> findSummariesAfterTitle(@Param("status") Integer status, @Param("lastTitle") String lastTitle,
+                                                   @Param("lastId") Long lastId, Pageable pageable);
+
+    // Worker media ghi kết quả upload; chỉ ghi đè URL khi có file mới (video mới thì bỏ HLS cũ)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Course c SET c.thumbnailUrl = COALESCE(:thumbnailUrl, c.thumbnailUrl), " +
+            "c.thumbnailKey = COALESCE(:thumbnailKey, c.thumbnailKey), " +
+            "c.videoUrl = COALESCE(:videoUrl, c.videoUrl), c.videoKey = COALESCE(:videoKey, c.videoKey), " +
+            "c.hlsUrl = CASE WHEN :videoKey IS NULL THEN c.hlsUrl ELSE NULL END, " +
+            "c.mediaStatus = :mediaStatus, c.mediaError = :mediaError " +
+            "WHERE c.id = :id")
+    int updateMedia(@Param("id") Long id, @Param("thumbnailUrl") String thumbnailUrl, @Param("thumbnailKey") String thumbnailKey,
+                    @Param("videoUrl") String videoUrl, @Param("videoKey") String videoKey,
+                    @Param("mediaStatus") MediaStatus mediaStatus, @Param("mediaError") String mediaError);
+
+    // Job media nhận từ trước :before mà vẫn PROCESSING thì không còn worker nào xử lý (file tạm đã mất);
+    // course cũ chưa có mediaRequestedAt cũng được tính
+    @Modifying
+    @Transactional
+    @Query("UPDATE Course c SET c.mediaStatus = :failed, c.mediaError = :mediaError " +
+            "WHERE c.mediaStatus = :processing AND (c.mediaRequestedAt IS NULL OR c.mediaRequestedAt < :before)")
+    int failStaleMedia(@Param("processing") MediaStatus processing, @Param("failed") MediaStatus failed,
+                       @Param("before") LocalDateTime before, @Param("mediaError") String mediaError);
+
+    // Chỉ ghi HLS nếu course vẫn dùng đúng video đã được cắt (video có thể đã bị thay trong lúc cắt segment)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Course c SET c.hlsUrl = :hlsUrl WHERE c.id = :id AND c.videoKey = :videoKey")
+    int updateHlsUrl(@Param("id") Long id, @Param("videoKey") String videoKey, @Param("hlsUrl") String hlsUrl);
+
+    // Đánh dấu course đang bị xóa; gọi lại với course đã đánh dấu thì giữ mốc cũ
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("UPDATE Course c SET c.deletedAt = :now WHERE c.id = :id AND c.deletedAt IS NULL")
+    int markDeleted(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    // Course đã đánh dấu xóa từ trước :before nhưng chưa xóa xong (lần xóa trước bị ngắt)
+    @Query("SELECT c.id FROM Course c WHERE c.deletedAt < :before ORDER BY c.id")
+    List<Long> findIdsMarkedDeletedBefore(@Param("before") LocalDateTime before);
+
+    // Xóa course bằng một câu lệnh (các bảng con đã được xóa theo lô trước đó)
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("DELETE FROM Course c WHERE c.id = :id")
+    int deleteCourseById(@Param("id") Long id);
+
+    // Cập nhật search_vector sau khi lưu course
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE \"Courses\" c SET search_vector = " + SEARCH_VECTOR_EXPR + " WHERE c.id = :id",
+            nativeQuery = true)
+    void refreshSearchVector(@Param("id") Long id);
+
+    // Cập nhật lại search_vector khi category đổi tên
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE \"Courses\" c SET search_vector = " + SEARCH_VECTOR_EXPR + " WHERE c.category_id = :categoryId",
+            nativeQuery = true)
+    void refreshSearchVectorByCategory(@Param("categoryId") Long categoryId);
+
+    // Tìm kiếm xếp hạng trên GIN index; status < 0 nghĩa là không lọc theo status
+    @Query(value = "SELECT c.id AS \"id\", c.title AS \"title\", c.thumbnail_url AS \"thumbnailUrl\", " +
+            "c.price AS \"price\", c.teacher_id AS \"teacherId\", c.category_id AS \"categoryId\", " +
+            "c.status AS \"status\", ts_rank_cd(c.search_vector, tsq) AS \"rank\" " +
+            "FROM \"Courses\" c CROSS JOIN to_tsquery('simple', :query) AS tsq " +
+            "WHERE c.search_vector @@ tsq AND c.deleted_at IS NULL " +
+            "AND (:status < 0 OR c.status = :status) " +
+            "AND c.price BETWEEN :minPrice AND :maxPrice " +
+            "ORDER BY \"rank\" DESC, c.id " +
+            "LIMIT :limit", nativeQuery = true)
+    List<CourseSearchResult> searchRanked(@Param("query") String query, @Param("status") int status,
+                                          @Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice,
+                                          @Param("limit") int limit);
 }
@@ -0,0 +1,80 @@
+package org.example.sellingcourese.repository;
+
+import org.example.sellingcourese.Model.CourseSalesDaily;
+import org.example.sellingcourese.Request.CourseSalesDTO;
+import org.example.sellingcourese.Request.DailySalesDTO;
+import org.example.sellingcourese.Request.TeacherSalesDTO;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface CourseSalesDailyRepository extends JpaRepository<CourseSalesDaily, Long> {
+
+    // Doanh số của các đơn hoàn tất, gom theo (ngày hoàn tất, course).
+    // Doanh thu lấy từ giá đã chốt trên Order_items (DatabaseSchemaInitializer chốt giá cho dòng cũ),
+    // không dùng giá course hiện tại nên rebuild luôn ra cùng kết quả
+    String SALES_INSERT = "INSERT INTO course_sales_daily (sales_date, course_id, teacher_id, units_sold, revenue) " +
+            "SELECT CAST(o.completed_at AS date), oi.course_id, MAX(c.teacher_id), SUM(oi.quantity), " +
+            "SUM(oi.price * oi.quantity) " +
+            "FROM \"Orders\" o JOIN \"Order_items\" oi ON oi.order_id = o.id JOIN \"Courses\" c ON c.id = oi.course_id " +
+            "WHERE o.status_id = 3 AND o.completed_at IS NOT NULL ";
+    String SALES_GROUP_BY = "GROUP BY CAST(o.completed_at AS date), oi.course_id ";
+
+    // Cộng một đơn vừa hoàn tất vào rollup (gọi đúng một lần cho mỗi lần chuyển sang trạng thái 3)
+    @Modifying
+    @Transactional
+    @Query(value = SALES_INSERT + "AND o.id = :orderId " + SALES_GROUP_BY +
+            "ON CONFLICT (sales_date, course_id) DO UPDATE SET " +
+            "units_sold = course_sales_daily.units_sold + EXCLUDED.units_sold, " +
+            "revenue = course_sales_daily.revenue + EXCLUDED.revenue, " +
+            "teacher_id = EXCLUDED.teacher_id", nativeQuery = true)
+    int addCompletedOrder(@Param("orderId") Long orderId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM course_sales_daily WHERE sales_date = :day", nativeQuery = true)
+    int deleteDay(@Param("day") LocalDate day);
+
+    // Tính lại một ngày từ Orders/Order_items (khi một đơn rời trạng thái hoàn tất)
+    @Modifying
+    @Transactional
+    @Query(value = SALES_INSERT + "AND o.completed_at >= :from AND o.completed_at < :to " + SALES_GROUP_BY,
+            nativeQuery = true)
+    int insertRange(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM course_sales_daily", nativeQuery = true)
+    int deleteAllRows();
+
+    @Modifying
+    @Transactional
+    @Query(value = SALES_INSERT + SALES_GROUP_BY, nativeQuery = true)
+    int insertAll();
+
+    @Query("SELECT new org.example.sellingcourese.Request.DailySalesDTO(s.salesDate, SUM(s.unitsSold), SUM(s.revenue)) " +
+            "FROM CourseSalesDaily s WHERE s.salesDate BETWEEN :from AND :to " +
+            "GROUP BY s.salesDate ORDER BY s.salesDate")
+    List<DailySalesDTO> findDailyTotals(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("SELECT new org.example.sellingcourese.Request.CourseSalesDTO(" +
+            "s.courseId, c.title, MAX(s.teacherId), SUM(s.unitsSold), SUM(s.revenue)) " +
+            "FROM CourseSalesDaily s LEFT JOIN Course c ON c.id = s.courseId " +
+            "WHERE s.salesDate BETWEEN :from AND :to " +
+            "GROUP BY s.courseId, c.title ORDER BY SUM(s.revenue) DESC, s.courseId")
+    List<CourseSalesDTO> findTopCourses(@Param("from") LocalDate from, @Param("to") LocalDate to, Pageable pageable);
+
+    @Query("SELECT new org.example.sellingcourese.Request.TeacherSalesDTO(" +
+            "s.teacherId, u.displayName, COUNT(DISTINCT s.courseId), SUM(s.unitsSold), SUM(s.revenue)) " +
+            "FROM CourseSalesDaily s LEFT JOIN User u ON u.userID = s.teacherId " +
+            "WHERE s.salesDate BETWEEN :from AND :to " +
+            "GROUP BY s.teacherId, u.displayName ORDER BY SUM(s.revenue) DESC, s.teacherId")
+    List<TeacherSalesDTO> findTopTeachers(@Param("from") LocalDate from, @Param("to") LocalDate to, Pageable pageable);
+}
@@ -0,0 +1,24 @@
+package org.example.sellingcourese.repository;
+
+import org.example.sellingcourese.Model.CourseThumbnail;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CourseThumbnailRepository extends JpaRepository<CourseThumbnail, Long> {
+
+    List<CourseThumbnail> findByCourseId(Long courseId);
+
+    // Một truy vấn cho cả trang catalog
+    List<CourseThumbnail> findByCourseIdInOrderByCourseIdAscWidthAsc(Collection<Long> courseIds);
+
+    @Modifying
+    @Query("DELETE FROM CourseThumbnail t WHERE t.courseId = :courseId")
+    int deleteByCourseId(@Param("courseId") Long courseId);
+}
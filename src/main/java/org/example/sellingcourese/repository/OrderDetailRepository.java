@@ -1,24 +1,75 @@
 package org.example.sellingcourese.repository;
 
+import jakarta.persistence.QueryHint;
 import org.example.sellingcourese.Model.Order;
 import org.example.sellingcourese.Model.OrderItem;
+import org.example.sellingcourese.Request.OrderHistoryLineDTO;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface OrderDetailRepository extends JpaRepository<OrderItem, Long> {
-    @Modifying
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Transactional
     @Query("DELETE FROM OrderItem oi WHERE oi.courseId = :courseId")
-    void deleteByCourseId(@Param("courseId") Long courseId);
+    int deleteByCourseId(@Param("courseId") Long courseId);
     List<OrderItem> findByOrderId(Long orderId);
-    void deleteByOrderId(Long orderId);
+
+    // Chép toàn bộ dòng của cart thành dòng đơn hàng bằng một câu lệnh, đơn giá lấy từ Courses (bỏ course đang bị xóa)
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query(value = "INSERT INTO \"Order_items\" (id, order_id, course_id, quantity, price) " +
+            "SELECT nextval('order_items_seq'), :orderId, d.\"CourseID\", d.\"Quantity\", c.price " +
+            "FROM \"CartDetails\" d JOIN \"Courses\" c ON c.id = d.\"CourseID\" " +
+            "WHERE d.\"CartID\" = :cartId AND c.deleted_at IS NULL ORDER BY d.\"CartDetailID\"", nativeQuery = true)
+    int insertFromCart(@Param("orderId") Long orderId, @Param("cartId") Long cartId);
+
+    // Đọc theo cursor của JDBC driver (phải gọi trong transaction), dùng cho export
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("SELECT oi FROM OrderItem oi ORDER BY oi.id")
+    Stream<OrderItem> streamForExport();
+
+    // Dòng của nhiều đơn hàng kèm course trong một truy vấn (tránh N+1 khi trả lịch sử)
+    @Query("SELECT oi FROM OrderItem oi LEFT JOIN FETCH oi.course WHERE oi.orderId IN :orderIds ORDER BY oi.id")
+    List<OrderItem> findWithCourseByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
+
+    @Query("SELECT new org.example.sellingcourese.Request.OrderHistoryLineDTO(" +
+            "oi.orderId, oi.courseId, c.title, c.thumbnailUrl, COALESCE(oi.price, c.price), oi.quantity, " +
+            "COALESCE(oi.price, c.price) * oi.quantity) " +
+            "FROM OrderItem oi LEFT JOIN oi.course c WHERE oi.orderId IN :orderIds ORDER BY oi.id")
+    List<OrderHistoryLineDTO> findHistoryLines(@Param("orderIds") Collection<Long> orderIds);
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("DELETE FROM OrderItem oi WHERE oi.orderId = :orderId")
+    int deleteByOrderId(@Param("orderId") Long orderId);
+
+    // Xóa tối đa :limit dòng của một course; gọi lặp cho tới khi trả về < limit
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query(value = "DELETE FROM \"Order_items\" WHERE id IN (" +
+            "SELECT id FROM \"Order_items\" WHERE course_id = :courseId LIMIT :limit)", nativeQuery = true)
+    int deleteChunkByCourseId(@Param("courseId") Long courseId, @Param("limit") int limit);
     List<OrderItem> findByOrder_UserId(Long userId);
 
+    // EXISTS theo (Orders.user_id, Order_items.order_id + course_id), không tải lịch sử mua của user
+    boolean existsByCourseIdAndOrder_UserId(Long courseId, Long userId);
+
+    // Trong các course cho trước, những course user đã mua
+    @Query("SELECT DISTINCT oi.courseId FROM OrderItem oi JOIN oi.order o " +
+            "WHERE o.userId = :userId AND oi.courseId IN :courseIds")
+    List<Long> findOwnedCourseIds(@Param("userId") Long userId, @Param("courseIds") Collection<Long> courseIds);
+
 
 
 }
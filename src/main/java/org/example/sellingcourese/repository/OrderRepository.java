@@ -1,14 +1,24 @@
 package org.example.sellingcourese.repository;
 
+import jakarta.persistence.QueryHint;
 import org.example.sellingcourese.Model.Order;
+import org.example.sellingcourese.Request.OrderHistoryDTO;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 
 public interface OrderRepository extends JpaRepository<Order, Long> {
@@ -18,4 +28,67 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByStatusId(Long statusId);
     List<Order> findByUserIdAndStatusId(Long userId, Long statusId);
     void deleteById(Long id);
+
+    Optional<Order> findByUserIdAndIdempotencyKey(Long userId, String idempotencyKey);
+
+    @Query(value = "SELECT nextval('vnp_txn_ref_seq')", nativeQuery = true)
+    long nextTxnRefSequence();
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Order o SET o.vnpTxnRef = :txnRef, o.vnpCreateDate = :createDate, " +
+            "o.vnpRequestedAt = CURRENT_TIMESTAMP, o.lastReconciledAt = NULL WHERE o.id = :id AND o.statusId <> 3")
+    int recordPaymentRequest(@Param("id") Long id, @Param("txnRef") String txnRef,
+                             @Param("createDate") String createDate);
+
+    // Đơn chờ thanh toán đã quá hạn URL VNPay nhưng chưa quá cũ, chưa đối soát gần đây; keyset theo id
+    @Query("SELECT o FROM Order o WHERE o.statusId = 2 AND o.vnpTxnRef IS NOT NULL " +
+            "AND o.vnpRequestedAt BETWEEN :oldest AND :newest " +
+            "AND (o.lastReconciledAt IS NULL OR o.lastReconciledAt < :recheckBefore) " +
+            "AND o.id > :afterId ORDER BY o.id")
+    List<Order> findReconcileCandidates(@Param("oldest") LocalDateTime oldest, @Param("newest") LocalDateTime newest,
+                                        @Param("recheckBefore") LocalDateTime recheckBefore,
+                                        @Param("afterId") Long afterId, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Order o SET o.lastReconciledAt = CURRENT_TIMESTAMP WHERE o.id IN :ids")
+    int markReconciled(@Param("ids") Collection<Long> ids);
+
+    // Tạo header đơn hàng; trả về null nếu user đã có đơn với cùng idempotency key (request gửi lại)
+    @Transactional
+    @Query(value = "INSERT INTO \"Orders\" (id, user_id, status_id, total_price, idempotency_key) " +
+            "VALUES (nextval('orders_seq'), :userId, :statusId, :totalPrice, :idempotencyKey) " +
+            "ON CONFLICT (user_id, idempotency_key) DO NOTHING RETURNING id", nativeQuery = true)
+    Long insertIfAbsent(@Param("userId") Long userId, @Param("statusId") Long statusId,
+                        @Param("totalPrice") BigDecimal totalPrice, @Param("idempotencyKey") String idempotencyKey);
+
+    // Chỉ chuyển một lần: callback thanh toán lặp lại trả về 0 và không cộng doanh thu hai lần
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("UPDATE Order o SET o.statusId = 3, o.completedAt = CURRENT_TIMESTAMP WHERE o.id = :id AND o.statusId <> 3")
+    int markCompleted(@Param("id") Long id);
+
+    // Đọc theo cursor của JDBC driver (phải gọi trong transaction), dùng cho export
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("SELECT o FROM Order o WHERE (:statusId IS NULL OR o.statusId = :statusId) ORDER BY o.id")
+    Stream<Order> streamForExport(@Param("statusId") Long statusId);
+
+    // Một trang lịch sử đơn hàng (mới nhất trước), tổng tiền tính bằng GROUP BY; keyset theo id dùng idx_orders_user_id
+    @Query("SELECT new org.example.sellingcourese.Request.OrderHistoryDTO(" +
+            "o.id, o.statusId, s.name, o.totalPrice, COUNT(oi.id), SUM(COALESCE(oi.price, c.price) * oi.quantity)) " +
+            "FROM Order o LEFT JOIN o.status s LEFT JOIN o.orderItems oi LEFT JOIN oi.course c " +
+            "WHERE o.userId = :userId AND o.id < :beforeId " +
+            "GROUP BY o.id, o.statusId, s.name, o.totalPrice " +
+            "ORDER BY o.id DESC")
+    List<OrderHistoryDTO> findHistoryPage(@Param("userId") Long userId, @Param("beforeId") Long beforeId,
+                                          Pageable pageable);
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("DELETE FROM Order o WHERE o.id = :id")
+    int deleteOrderById(@Param("id") Long id);
 }
@@ -0,0 +1,54 @@
+package org.example.sellingcourese.repository;
+
+import org.example.sellingcourese.Model.PaymentInbox;
+import org.example.sellingcourese.Model.PaymentInboxStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface PaymentInboxRepository extends JpaRepository<PaymentInbox, Long> {
+
+    // Callback lặp lại cùng vnp_TxnRef bị bỏ qua; trả về 0 nếu đã có
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO payment_inbox (txn_ref, order_id, source, amount, response_code, transaction_status, " +
+            "transaction_no, status, attempts, next_attempt_at, received_at) " +
+            "VALUES (:txnRef, :orderId, :source, :amount, :responseCode, :transactionStatus, :transactionNo, " +
+            "'PENDING', 0, now(), now()) " +
+            "ON CONFLICT (txn_ref) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("txnRef") String txnRef, @Param("orderId") Long orderId, @Param("source") String source,
+                       @Param("amount") BigDecimal amount, @Param("responseCode") String responseCode,
+                       @Param("transactionStatus") String transactionStatus,
+                       @Param("transactionNo") String transactionNo);
+
+    Optional<PaymentInbox> findByTxnRef(String txnRef);
+
+    // Nhận một lô để xử lý: SKIP LOCKED để nhiều instance không nhận trùng, lease hết hạn thì dòng được nhận lại
+    @Transactional
+    @Query(value = "UPDATE payment_inbox SET status = 'PROCESSING', attempts = attempts + 1, " +
+            "next_attempt_at = now() + make_interval(secs => :leaseSeconds) " +
+            "WHERE id IN (SELECT id FROM payment_inbox WHERE status IN ('PENDING', 'PROCESSING') " +
+            "AND next_attempt_at <= now() ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+            "RETURNING *", nativeQuery = true)
+    List<PaymentInbox> claimBatch(@Param("limit") int limit, @Param("leaseSeconds") int leaseSeconds);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PaymentInbox p SET p.status = :status, p.lastError = :error, p.processedAt = CURRENT_TIMESTAMP " +
+            "WHERE p.id = :id")
+    int markFinished(@Param("id") Long id, @Param("status") PaymentInboxStatus status, @Param("error") String error);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE PaymentInbox p SET p.status = org.example.sellingcourese.Model.PaymentInboxStatus.PENDING, " +
+            "p.nextAttemptAt = :nextAttemptAt, p.lastError = :error WHERE p.id = :id")
+    int scheduleRetry(@Param("id") Long id, @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                      @Param("error") String error);
+}
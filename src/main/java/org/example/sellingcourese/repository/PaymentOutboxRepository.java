@@ -0,0 +1,16 @@
+package org.example.sellingcourese.repository;
+
+import org.example.sellingcourese.Model.PaymentOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface PaymentOutboxRepository extends JpaRepository<PaymentOutbox, Long> {
+
+    // Khóa một lô sự kiện chưa phát (phải gọi trong transaction); instance khác bỏ qua các dòng đang bị khóa
+    @Query(value = "SELECT * FROM payment_outbox WHERE published_at IS NULL AND attempts < :maxAttempts " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<PaymentOutbox> lockUnpublished(@Param("limit") int limit, @Param("maxAttempts") int maxAttempts);
+}
@@ -2,10 +2,21 @@ package org.example.sellingcourese.repository;
 
 import org.example.sellingcourese.Model.Review;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 public interface ReviewRepository extends JpaRepository<Review, Long> {
     List<Review> findByUserId(Long userId);
     List<Review> findByCourseId(Long courseId);
+
+    // Xóa tối đa :limit review của một course; gọi lặp cho tới khi trả về < limit
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query(value = "DELETE FROM \"Reviews\" WHERE id IN (" +
+            "SELECT id FROM \"Reviews\" WHERE course_id = :courseId LIMIT :limit)", nativeQuery = true)
+    int deleteChunkByCourseId(@Param("courseId") Long courseId, @Param("limit") int limit);
 }
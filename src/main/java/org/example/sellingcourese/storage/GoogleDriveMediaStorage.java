@@ -0,0 +1,40 @@
+package org.example.sellingcourese.storage;
+
+import org.example.sellingcourese.Service.GoogleDriveService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.util.Optional;
+
+// Backend mặc định: upload lên Google Drive, client tải file qua link công khai của Drive
+@Component
+@ConditionalOnProperty(name = "media.storage.type", havingValue = "drive", matchIfMissing = true)
+public class GoogleDriveMediaStorage implements MediaStorage {
+    private static final Logger log = LoggerFactory.getLogger(GoogleDriveMediaStorage.class);
+
+    @Autowired
+    private GoogleDriveService googleDriveService;
+
+    @Override
+    public StoredMedia store(String key, String contentType, long size, InputStream content) {
+        String fileName = key.substring(key.lastIndexOf('/') + 1);
+        String url = googleDriveService.uploadStream(fileName, content, size, contentType);
+        return new StoredMedia(key, url, size);
+    }
+
+    @Override
+    public Optional<MediaFile> open(String key) {
+        // File nằm trên Drive, không phục vụ trực tiếp từ server
+        return Optional.empty();
+    }
+
+    @Override
+    public void delete(String key) {
+        // Drive chỉ định danh file theo id, file cũ được giữ lại
+        log.debug("Delete is not supported for Drive media, keeping {}", key);
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.sellingcourese.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+// Lưu media trên đĩa cục bộ hoặc NFS. Ghi bằng FileChannel.transferFrom vào file tạm rồi move atomic,
+// đọc bằng MediaFile để controller trả về zero-copy.
+@Component
+@ConditionalOnProperty(name = "media.storage.type", havingValue = "local")
+public class LocalMediaStorage implements MediaStorage {
+    private static final Logger log = LoggerFactory.getLogger(LocalMediaStorage.class);
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+    private final Path rootDir;
+    private final String publicBaseUrl;
+
+    public LocalMediaStorage(@Value("${media.local.root-dir:./media}") String rootDir,
+                             @Value("${media.local.public-base-url:/public/media}") String publicBaseUrl) throws IOException {
+        this.rootDir = Paths.get(rootDir).toAbsolutePath().normalize();
+        this.publicBaseUrl = publicBaseUrl.endsWith("/") ? publicBaseUrl.substring(0, publicBaseUrl.length() - 1) : publicBaseUrl;
+        Files.createDirectories(this.rootDir);
+        log.info("Local media storage at {}", this.rootDir);
+    }
+
+    @Override
+    public StoredMedia store(String key, String contentType, long size, InputStream content) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path tempFile = Files.createTempFile(target.getParent(), ".upload-", ".part");
+        try (ReadableByteChannel source = Channels.newChannel(content);
+             FileChannel destination = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            long position = 0;
+            long transferred;
+            // transferFrom trả về 0 khi stream hết dữ liệu
+            while ((transferred = destination.transferFrom(source, position, TRANSFER_CHUNK)) > 0) {
+                position += transferred;
+            }
+            destination.force(true);
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new StoredMedia(key, publicBaseUrl + "/" + key, position);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public Optional<MediaFile> open(String key) throws IOException {
+        Path path = resolve(key);
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        String contentType = MediaTypeFactory.getMediaType(path.getFileName().toString())
+                .map(Object::toString)
+                .orElse("application/octet-stream");
+        return Optional.of(new MediaFile(path, Files.size(path), Files.getLastModifiedTime(path).toMillis(), contentType));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    // Không cho key thoát ra ngoài thư mục gốc (../)
+    private Path resolve(String key) {
+        Path path = rootDir.resolve(key).normalize();
+        if (!path.startsWith(rootDir) || path.equals(rootDir)) {
+            throw new IllegalArgumentException("Invalid media key: " + key);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,16 @@
+package org.example.sellingcourese.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+// Thông tin một file media trên đĩa, đủ để trả về bằng FileChannel.transferTo / sendfile
+@Getter
+@AllArgsConstructor
+public class MediaFile {
+    private final Path path;
+    private final long size;
+    private final long lastModified;
+    private final String contentType;
+}
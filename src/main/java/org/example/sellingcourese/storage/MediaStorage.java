@@ -0,0 +1,18 @@
+package org.example.sellingcourese.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+// SPI lưu trữ media của course (thumbnail, video, ...).
+// Backend được chọn bằng media.storage.type = drive (mặc định) | local.
+public interface MediaStorage {
+
+    // Ghi nội dung từ stream dưới key cho trước, trả về URL công khai để client tải về
+    StoredMedia store(String key, String contentType, long size, InputStream content) throws IOException;
+
+    // File cục bộ để phục vụ trực tiếp (zero-copy); empty nếu backend không lưu trên đĩa hoặc key không tồn tại
+    Optional<MediaFile> open(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+}
@@ -0,0 +1,12 @@
+package org.example.sellingcourese.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class StoredMedia {
+    private final String key;
+    private final String url;
+    private final long size;
+}
@@ -0,0 +1,79 @@
+package org.example.sellingcourese.Service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.example.sellingcourese.Model.Course;
+import org.example.sellingcourese.Model.User;
+import org.example.sellingcourese.Request.CartDTO;
+import org.example.sellingcourese.TestFixtures;
+import org.example.sellingcourese.TestcontainersConfiguration;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// getCartDetailsWithCourseByCartID chạy đúng một câu lệnh SQL (Hibernate Statistics) bất kể số dòng giỏ hàng,
+// cả khi giỏ hàng đang nằm trong bộ nhớ lẫn khi phải đọc từ DB
+@SpringBootTest
+@ActiveProfiles("it")
+@Import({TestcontainersConfiguration.class, TestFixtures.class})
+@Testcontainers(disabledWithoutDocker = true)
+class CartDetailsQueryCountTest {
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CartSessionStore cartSessionStore;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void enableStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 50, 200})
+    void cartDetailsTakeOneStatementRegardlessOfCartSize(int lines) {
+        User user = fixtures.createUser();
+        User teacher = fixtures.createUser();
+        for (int i = 0; i < lines; i++) {
+            Course course = fixtures.createCourse(teacher.getUserID(), new BigDecimal("99000.00"));
+            cartSessionStore.addLine(user.getUserID(), course.getId(), 1, course.getPrice());
+        }
+        cartSessionStore.flush(user.getUserID());
+        Long cartId = cartSessionStore.get(user.getUserID()).getCartID();
+
+        // Giỏ hàng trong bộ nhớ: chỉ nạp course của các dòng
+        statistics.clear();
+        List<CartDTO> cached = cartService.getCartDetailsWithCourseByCartID(cartId);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(cached).hasSize(lines).allSatisfy(line -> assertThat(line.getCourseTitle()).isNotNull());
+
+        // Không còn trong bộ nhớ: một truy vấn join từ DB, cùng kết quả
+        cartSessionStore.evictCart(cartId);
+        statistics.clear();
+        List<CartDTO> stored = cartService.getCartDetailsWithCourseByCartID(cartId);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(stored).usingRecursiveFieldByFieldElementComparatorIgnoringFields("createdDate")
+                .containsExactlyInAnyOrderElementsOf(cached);
+    }
+}
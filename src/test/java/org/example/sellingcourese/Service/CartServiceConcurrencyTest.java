@@ -0,0 +1,92 @@
+package org.example.sellingcourese.Service;
+
+import org.example.sellingcourese.Model.Cart;
+import org.example.sellingcourese.Model.Course;
+import org.example.sellingcourese.Model.User;
+import org.example.sellingcourese.Request.CartDTO;
+import org.example.sellingcourese.TestFixtures;
+import org.example.sellingcourese.TestcontainersConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Nhiều request "thêm vào giỏ" cùng lúc cho cùng một course (double-click, nhiều tab)
+@SpringBootTest
+@ActiveProfiles("it")
+@Import({TestcontainersConfiguration.class, TestFixtures.class})
+@Testcontainers(disabledWithoutDocker = true)
+class CartServiceConcurrencyTest {
+
+    private static final int CLIENTS = 16;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CartSessionStore cartSessionStore;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void parallelAddsOfSameCourseEndUpAsOneLineWithSummedQuantity() throws Exception {
+        User user = fixtures.createUser();
+        User teacher = fixtures.createUser();
+        Course course = fixtures.createCourse(teacher.getUserID(), new BigDecimal("199000.00"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, Object>>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < CLIENTS; i++) {
+                results.add(pool.submit(() -> {
+                    CartDTO dto = new CartDTO();
+                    dto.setUserID(user.getUserID());
+                    dto.setCourseID(course.getId());
+                    dto.setQuantity(1);
+                    start.await();
+                    return cartService.saveCartWithDetails(dto);
+                }));
+            }
+            start.countDown();
+            for (Future<Map<String, Object>> result : results) {
+                Map<String, Object> response = result.get();
+                assertThat(response).containsEntry("status", "success").containsKey("cart");
+                assertThat(((Cart) response.get("cart")).getCartDetails()).hasSize(1);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        cartSessionStore.flush(user.getUserID());
+
+        List<Map<String, Object>> carts = jdbcTemplate.queryForList(
+                "SELECT \"CartID\" FROM \"Carts\" WHERE \"UserID\" = ?", user.getUserID());
+        assertThat(carts).hasSize(1);
+
+        List<Map<String, Object>> lines = jdbcTemplate.queryForList(
+                "SELECT \"Quantity\", \"Price\" FROM \"CartDetails\" WHERE \"CartID\" = ? AND \"CourseID\" = ?",
+                carts.get(0).get("CartID"), course.getId());
+        assertThat(lines).hasSize(1);
+        assertThat(((Number) lines.get(0).get("Quantity")).intValue()).isEqualTo(CLIENTS);
+        assertThat((BigDecimal) lines.get(0).get("Price")).isEqualByComparingTo("199000.00");
+    }
+}
@@ -0,0 +1,193 @@
+package org.example.sellingcourese.Service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import org.example.sellingcourese.Model.Course;
+import org.example.sellingcourese.Model.CourseThumbnail;
+import org.example.sellingcourese.Model.User;
+import org.example.sellingcourese.Request.CourseSummaryDTO;
+import org.example.sellingcourese.TestFixtures;
+import org.example.sellingcourese.TestcontainersConfiguration;
+import org.example.sellingcourese.repository.CourseRepository;
+import org.example.sellingcourese.repository.CourseThumbnailRepository;
+import org.example.sellingcourese.storage.MediaStorage;
+import org.example.sellingcourese.storage.StoredMedia;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Xóa course có nhiều CartDetails, Order_items và Reviews: xóa theo chunk (CourseService.deleteCourse) so với
+// cách cũ của derived delete (nạp từng entity rồi remove từng cái), đếm bằng Hibernate Statistics
+@SpringBootTest
+@ActiveProfiles("it")
+@Import({TestcontainersConfiguration.class, TestFixtures.class})
+@Testcontainers(disabledWithoutDocker = true)
+class CourseDeleteTest {
+
+    // Mỗi user: một account, một cart có một dòng của course, một review và một đơn hàng có một dòng của course
+    private static final String SEED_SQL =
+            "WITH a AS (INSERT INTO \"Accounts\" (\"Username\", \"Password\", \"RoleId\") " +
+            "    SELECT 'bulk-' || gen_random_uuid(), 'secret', ? FROM generate_series(1, ?) RETURNING \"AccountID\"), " +
+            "u AS (INSERT INTO \"Users\" (\"DisplayName\", \"AccountID\") " +
+            "    SELECT 'Bulk user', \"AccountID\" FROM a RETURNING \"UserID\"), " +
+            "c AS (INSERT INTO \"Carts\" (\"UserID\", \"CreatedDate\") SELECT \"UserID\", now() FROM u RETURNING \"CartID\"), " +
+            "cd AS (INSERT INTO \"CartDetails\" (\"CartID\", \"CourseID\", \"Quantity\", \"Price\") " +
+            "    SELECT \"CartID\", ?, 1, 99000 FROM c), " +
+            "r AS (INSERT INTO \"Reviews\" (\"rating\", \"comment\", \"user_id\", \"course_id\") " +
+            "    SELECT 5, 'Bulk review', \"UserID\", ? FROM u), " +
+            "o AS (INSERT INTO \"Orders\" (\"id\", \"user_id\", \"total_price\", \"status_id\") " +
+            "    SELECT nextval('orders_seq'), \"UserID\", 99000, ? FROM u RETURNING \"id\") " +
+            "INSERT INTO \"Order_items\" (\"id\", \"order_id\", \"course_id\", \"quantity\", \"price\") " +
+            "SELECT nextval('order_items_seq'), \"id\", ?, 1, 99000 FROM o";
+
+    @Autowired
+    private CourseService courseService;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private CourseThumbnailRepository courseThumbnailRepository;
+
+    @Autowired
+    private MediaStorage mediaStorage;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${bulk.delete.chunk-size}")
+    private int chunkSize;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void enableStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {100, 1000, 5000})
+    void chunkedDeleteIssuesBoundedStatements(int rows) {
+        User teacher = fixtures.createUser();
+        Long chunked = seededCourse(teacher, rows);
+        Long legacy = seededCourse(teacher, rows);
+
+        statistics.clear();
+        courseService.deleteCourse(chunked);
+        long chunkedStatements = statistics.getPrepareStatementCount();
+        long chunkedEntityDeletes = statistics.getEntityDeleteCount();
+
+        statistics.clear();
+        legacyDeleteCourse(legacy);
+        long legacyStatements = statistics.getPrepareStatementCount();
+        long legacyEntityDeletes = statistics.getEntityDeleteCount();
+
+        for (Long course : List.of(chunked, legacy)) {
+            assertThat(count("SELECT COUNT(*) FROM \"CartDetails\" WHERE \"CourseID\" = ?", course)).isZero();
+            assertThat(count("SELECT COUNT(*) FROM \"Order_items\" WHERE \"course_id\" = ?", course)).isZero();
+            assertThat(count("SELECT COUNT(*) FROM \"Reviews\" WHERE \"course_id\" = ?", course)).isZero();
+            assertThat(courseRepository.existsById(course)).isFalse();
+        }
+
+        // Mỗi bảng: rows / chunkSize chunk đầy và một chunk cuối; cộng vài câu lệnh cố định
+        // (findById, đánh dấu xóa, thumbnails, xóa course) không phụ thuộc số dòng
+        long chunkStatements = 3L * (rows / chunkSize + 1);
+        assertThat(chunkedEntityDeletes).isZero();
+        assertThat(chunkedStatements).isBetween(chunkStatements, chunkStatements + 6);
+        assertThat(legacyEntityDeletes).isEqualTo(3L * rows + 1);
+        assertThat(legacyStatements).isGreaterThan(chunkedStatements);
+    }
+
+    @Test
+    void deleteRemovesThumbnailFilesAfterCommit() throws Exception {
+        User teacher = fixtures.createUser();
+        Course course = fixtures.createCourse(teacher.getUserID(), new BigDecimal("99000.00"));
+        byte[] bytes = new byte[]{1, 2, 3};
+        StoredMedia stored = mediaStorage.store("course-delete-test/" + course.getId() + "-w320.jpg", "image/jpeg",
+                bytes.length, new ByteArrayInputStream(bytes));
+        courseThumbnailRepository.save(new CourseThumbnail(null, course.getId(), 320, 180,
+                stored.getUrl(), stored.getKey(), (long) bytes.length));
+
+        courseService.deleteCourse(course.getId());
+
+        assertThat(courseThumbnailRepository.findByCourseId(course.getId())).isEmpty();
+        assertThat(mediaStorage.open(stored.getKey())).isEmpty();
+    }
+
+    @Test
+    void tombstonedCourseIsHiddenFromListings() {
+        User teacher = fixtures.createUser();
+        Course course = fixtures.createCourse(teacher.getUserID(), new BigDecimal("99000.00"));
+
+        courseRepository.markDeleted(course.getId(), LocalDateTime.now());
+
+        assertThat(courseRepository.findByStatusAndDeletedAtIsNull(course.getStatus()))
+                .extracting(Course::getId).doesNotContain(course.getId());
+        assertThat(courseRepository.findByTitleContainingIgnoreCaseAndDeletedAtIsNull(course.getTitle())).isEmpty();
+        assertThat(courseRepository.findSummariesAfterId(null, course.getId() - 1, PageRequest.of(0, 10)))
+                .extracting(CourseSummaryDTO::getId).doesNotContain(course.getId());
+    }
+
+    private Long seededCourse(User teacher, int rows) {
+        Course course = fixtures.createCourse(teacher.getUserID(), new BigDecimal("99000.00"));
+        Long roleId = jdbcTemplate.queryForObject("SELECT \"RoleId\" FROM \"Accounts\" WHERE \"AccountID\" = ?",
+                Long.class, teacher.getAccountID());
+        Long statusId = jdbcTemplate.queryForObject(
+                "INSERT INTO \"Status\" (\"name\", \"description\") VALUES ('Completed', 'Bulk') RETURNING \"id\"",
+                Long.class);
+        jdbcTemplate.update(SEED_SQL, roleId, rows, course.getId(), course.getId(), statusId, course.getId());
+        return course.getId();
+    }
+
+    // Cách cũ: mỗi derived delete (deleteByCourseID, deleteByCourseId) và deleteById chạy trong transaction
+    // riêng, nạp các entity khớp điều kiện rồi remove từng cái; Reviews bị xóa qua cascade của Course.reviews
+    private void legacyDeleteCourse(Long id) {
+        transactionTemplate.executeWithoutResult(status -> removeAll(
+                "SELECT d FROM CartDetail d WHERE d.courseID = :id", id));
+        transactionTemplate.executeWithoutResult(status -> removeAll(
+                "SELECT i FROM OrderItem i WHERE i.courseId = :id", id));
+        transactionTemplate.executeWithoutResult(status -> entityManager.remove(entityManager.find(Course.class, id)));
+    }
+
+    private void removeAll(String jpql, Long id) {
+        entityManager.createQuery(jpql, Object.class).setParameter("id", id).getResultList()
+                .forEach(entityManager::remove);
+    }
+
+    private long count(String sql, Long courseId) {
+        return jdbcTemplate.queryForObject(sql, Long.class, courseId);
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.sellingcourese.Service;
+
+import org.example.sellingcourese.Model.Course;
+import org.example.sellingcourese.Model.MediaStatus;
+import org.example.sellingcourese.Model.User;
+import org.example.sellingcourese.TestFixtures;
+import org.example.sellingcourese.TestcontainersConfiguration;
+import org.example.sellingcourese.repository.CourseRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Job media bị mất khi server tắt/crash: lúc khởi động course PROCESSING quá hạn bị chuyển FAILED,
+// job còn mới (có thể đang chạy trên instance khác) được giữ nguyên
+@SpringBootTest
+@ActiveProfiles("it")
+@Import({TestcontainersConfiguration.class, TestFixtures.class})
+@Testcontainers(disabledWithoutDocker = true)
+class CourseMediaRecoveryTest {
+
+    @Autowired
+    private CourseMediaProcessor courseMediaProcessor;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    @Autowired
+    private TestFixtures fixtures;
+
+    @Test
+    void staleProcessingCoursesAreFailedOnStartup() {
+        User teacher = fixtures.createUser();
+        Course stale = processingCourse(teacher, LocalDateTime.now().minusDays(1));
+        Course fresh = processingCourse(teacher, LocalDateTime.now());
+
+        courseMediaProcessor.failStaleJobs();
+
+        Course failed = courseRepository.findById(stale.getId()).orElseThrow();
+        assertThat(failed.getMediaStatus()).isEqualTo(MediaStatus.FAILED);
+        assertThat(failed.getMediaError()).isNotBlank();
+        assertThat(courseRepository.findById(fresh.getId()).orElseThrow().getMediaStatus())
+                .isEqualTo(MediaStatus.PROCESSING);
+    }
+
+    private Course processingCourse(User teacher, LocalDateTime requestedAt) {
+        Course course = fixtures.createCourse(teacher.getUserID(), new BigDecimal("99000.00"));
+        course.setMediaStatus(MediaStatus.PROCESSING);
+        course.setMediaRequestedAt(requestedAt);
+        return courseRepository.save(course);
+    }
+}
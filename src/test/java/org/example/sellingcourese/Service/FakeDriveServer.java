@@ -0,0 +1,121 @@
+package org.example.sellingcourese.Service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Drive API giả chạy trên localhost cho test: token endpoint (service account JWT), resumable upload
+// (khởi tạo, từng chunk trả 308, chunk cuối trả file) và permissions.create.
+// Ghi lại cổng phía client của mỗi request (để đếm connection) và header Authorization của các request Drive.
+public class FakeDriveServer implements AutoCloseable {
+    private final HttpServer server;
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final AtomicInteger fileIds = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private final List<Long> tokenLifetimes;
+
+    // tokenLifetimes: expires_in của từng lần cấp token; hết danh sách thì dùng giá trị cuối
+    public FakeDriveServer(List<Long> tokenLifetimes) throws IOException {
+        this.tokenLifetimes = List.copyOf(tokenLifetimes);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/token", this::token);
+        server.createContext("/upload/drive/v3/files", this::upload);
+        server.createContext("/drive/v3/files", this::permission);
+        server.start();
+    }
+
+    public String rootUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    public String tokenUrl() {
+        return rootUrl() + "token";
+    }
+
+    public int tokenRequests() {
+        return tokenRequests.get();
+    }
+
+    public int connections() {
+        return clientPorts.size();
+    }
+
+    public List<String> authorizations() {
+        return List.copyOf(authorizations);
+    }
+
+    private void token(HttpExchange exchange) throws IOException {
+        drain(exchange);
+        int issued = tokenRequests.incrementAndGet();
+        long expiresIn = tokenLifetimes.get(Math.min(issued, tokenLifetimes.size()) - 1);
+        sendJson(exchange, 200, "{\"access_token\":\"token-" + issued + "\",\"token_type\":\"Bearer\",\"expires_in\":"
+                + expiresIn + "}");
+    }
+
+    private void upload(HttpExchange exchange) throws IOException {
+        drain(exchange);
+        authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+        String query = exchange.getRequestURI().getRawQuery();
+        if ("POST".equals(exchange.getRequestMethod())) {
+            // Khởi tạo phiên resumable: client PUT từng chunk tới Location
+            exchange.getResponseHeaders().add("Location",
+                    rootUrl() + "upload/drive/v3/files?" + query + "&upload_id=" + fileIds.incrementAndGet());
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        // Content-Range: bytes <first>-<last>/<total>
+        String range = exchange.getRequestHeaders().getFirst("Content-Range");
+        String[] parts = range.substring("bytes ".length()).split("[-/]");
+        long last = Long.parseLong(parts[1]);
+        long total = Long.parseLong(parts[2]);
+        if (last + 1 < total) {
+            exchange.getResponseHeaders().add("Range", "bytes=0-" + last);
+            exchange.sendResponseHeaders(308, -1);
+            exchange.close();
+            return;
+        }
+        String id = "file-" + query.substring(query.lastIndexOf('=') + 1);
+        sendJson(exchange, 200, "{\"id\":\"" + id + "\",\"webContentLink\":\"" + rootUrl() + "download/" + id + "\"}");
+    }
+
+    private void permission(HttpExchange exchange) throws IOException {
+        drain(exchange);
+        authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+        sendJson(exchange, 200, "{\"id\":\"anyoneWithLink\",\"type\":\"anyone\",\"role\":\"reader\"}");
+    }
+
+    // Đọc hết body để connection được giữ lại (keep-alive) cho request sau
+    private void drain(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        try (InputStream body = exchange.getRequestBody()) {
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,221 @@
+package org.example.sellingcourese.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.sellingcourese.Config.VNPayConfig;
+import org.example.sellingcourese.Config.VNPaySigner;
+import org.example.sellingcourese.Model.Order;
+import org.example.sellingcourese.Request.VNPayCallback;
+import org.example.sellingcourese.repository.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// PaymentReconciler gọi querydr thật (VNPayService + RestClient) tới stub HTTP cục bộ thay cho VNPay sandbox
+class PaymentReconcilerTest {
+    private static final int REQUESTS_PER_SECOND = 5;
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private HttpServer server;
+    private final List<Long> requestTimes = new CopyOnWriteArrayList<>();
+    private final List<String> invalidRequestSignatures = new CopyOnWriteArrayList<>();
+
+    private SimpleMeterRegistry registry;
+    private OrderRepository orderRepository;
+    private PaymentInboxService paymentInboxService;
+    private PaymentReconciler reconciler;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/querydr", this::querydr);
+        server.start();
+
+        registry = new SimpleMeterRegistry();
+        orderRepository = mock(OrderRepository.class);
+        paymentInboxService = mock(PaymentInboxService.class);
+        reconciler = new PaymentReconciler(registry, 4, REQUESTS_PER_SECOND);
+        ReflectionTestUtils.setField(reconciler, "orderRepository", orderRepository);
+        ReflectionTestUtils.setField(reconciler, "paymentInboxService", paymentInboxService);
+        ReflectionTestUtils.setField(reconciler, "vnPayService",
+                new VNPayService("http://localhost:" + server.getAddress().getPort() + "/querydr", 2000));
+        ReflectionTestUtils.setField(reconciler, "transactionTemplate", new TransactionTemplate(new NoOpTransactionManager()));
+        ReflectionTestUtils.setField(reconciler, "enabled", true);
+        ReflectionTestUtils.setField(reconciler, "pageSize", 100);
+        ReflectionTestUtils.setField(reconciler, "staleAfterMinutes", 20L);
+        ReflectionTestUtils.setField(reconciler, "maxAgeHours", 48L);
+        ReflectionTestUtils.setField(reconciler, "recheckMinutes", 30L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reconciler.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void reconcilesOnlyFinalResultsWithValidSignatures() {
+        List<Order> pending = List.of(
+                order(1L, "PAID"),
+                order(2L, "PENDING"),
+                order(3L, "BADSIG"),
+                order(4L, "MISSING"));
+        when(orderRepository.findReconcileCandidates(any(), any(), any(), any(), any())).thenReturn(pending);
+
+        reconciler.reconcile();
+
+        // Đơn đã trả tiền: đi qua inbox như IPN; các đơn còn lại không được ghi vào inbox
+        ArgumentCaptor<VNPayCallback> received = ArgumentCaptor.forClass(VNPayCallback.class);
+        verify(paymentInboxService, times(1)).receive(received.capture(), eq("RECONCILE"));
+        VNPayCallback paid = received.getValue();
+        assertThat(paid.getTxnRef()).isEqualTo("PAID");
+        assertThat(paid.getOrderId()).isEqualTo(1L);
+        assertThat(paid.isSuccessful()).isTrue();
+        assertThat(paid.getAmount()).isEqualByComparingTo("199000.00");
+
+        assertThat(registry.counter("payment.reconcile.checked").count()).isEqualTo(3.0);
+        assertThat(registry.counter("payment.reconcile.not_final").count()).isEqualTo(1.0);
+        assertThat(registry.counter("payment.reconcile.errors").count()).isEqualTo(1.0);
+        assertThat(registry.counter("payment.reconcile.mismatches", "type", "paid_but_pending").count()).isEqualTo(1.0);
+        assertThat(registry.counter("payment.reconcile.mismatches", "type", "signature").count()).isEqualTo(1.0);
+        assertThat(registry.counter("payment.reconcile.mismatches", "type", "amount").count()).isZero();
+
+        // Đơn lỗi chữ ký không được đánh dấu đã đối soát, lần chạy sau hỏi lại
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Long>> marked = ArgumentCaptor.forClass(Collection.class);
+        verify(orderRepository).markReconciled(marked.capture());
+        assertThat(marked.getValue()).containsExactlyInAnyOrder(1L, 2L, 4L);
+
+        assertThat(invalidRequestSignatures).isEmpty();
+    }
+
+    @Test
+    void spacesRequestsToTheConfiguredRate() {
+        List<Order> pending = new ArrayList<>();
+        for (long id = 1; id <= 8; id++) {
+            pending.add(order(id, "MISSING"));
+        }
+        when(orderRepository.findReconcileCandidates(any(), any(), any(), any(), any())).thenReturn(pending);
+
+        reconciler.reconcile();
+
+        assertThat(requestTimes).hasSize(8);
+        List<Long> sorted = requestTimes.stream().sorted().toList();
+        long intervalNanos = 1_000_000_000L / REQUESTS_PER_SECOND;
+        // 4 thread song song nhưng các request vẫn cách nhau ít nhất một khoảng permit (trừ sai số lập lịch)
+        for (int i = 1; i < sorted.size(); i++) {
+            assertThat(sorted.get(i) - sorted.get(i - 1)).isGreaterThan(intervalNanos * 3 / 4);
+        }
+        assertThat(sorted.get(sorted.size() - 1) - sorted.get(0)).isGreaterThanOrEqualTo(intervalNanos * 7 * 9 / 10);
+    }
+
+    private Order order(Long id, String txnRef) {
+        Order order = new Order();
+        order.setId(id);
+        order.setUserId(10L);
+        order.setStatusId(2L);
+        order.setTotalPrice(new BigDecimal("199000.00"));
+        order.setVnpTxnRef(txnRef);
+        order.setVnpCreateDate("20261017100000");
+        order.setVnpRequestedAt(LocalDateTime.now().minusHours(1));
+        return order;
+    }
+
+    // Stub querydr: kết quả theo vnp_TxnRef, phản hồi được ký như VNPay (trừ BADSIG)
+    private void querydr(HttpExchange exchange) throws IOException {
+        requestTimes.add(System.nanoTime());
+        Map<String, String> request;
+        try (InputStream body = exchange.getRequestBody()) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> parsed = JSON.readValue(body, Map.class);
+            request = parsed;
+        }
+        VNPaySigner signer = VNPaySigner.forKey(VNPayConfig.vnp_HashSecret);
+        String requestHashData = String.join("|", request.get("vnp_RequestId"), request.get("vnp_Version"),
+                request.get("vnp_Command"), request.get("vnp_TmnCode"), request.get("vnp_TxnRef"),
+                request.get("vnp_TransactionDate"), request.get("vnp_CreateDate"), request.get("vnp_IpAddr"),
+                request.get("vnp_OrderInfo"));
+        if (!signer.matches(requestHashData, request.get("vnp_SecureHash"))) {
+            invalidRequestSignatures.add(request.get("vnp_TxnRef"));
+        }
+
+        String txnRef = request.get("vnp_TxnRef");
+        Map<String, String> response = new LinkedHashMap<>();
+        response.put("vnp_ResponseId", "resp-" + txnRef);
+        response.put("vnp_Command", "querydr");
+        response.put("vnp_ResponseCode", "MISSING".equals(txnRef) ? "91" : "00");
+        response.put("vnp_Message", "OK");
+        response.put("vnp_TmnCode", request.get("vnp_TmnCode"));
+        response.put("vnp_TxnRef", txnRef);
+        response.put("vnp_Amount", "19900000");
+        response.put("vnp_BankCode", "NCB");
+        response.put("vnp_PayDate", "20261017101500");
+        response.put("vnp_TransactionNo", "1400" + txnRef.length());
+        response.put("vnp_TransactionType", "01");
+        response.put("vnp_TransactionStatus", "PENDING".equals(txnRef) ? "01" : "00");
+        response.put("vnp_OrderInfo", request.get("vnp_OrderInfo"));
+        response.put("vnp_PromotionCode", "");
+        response.put("vnp_PromotionAmount", "");
+        String responseHashData = String.join("|", response.values());
+        response.put("vnp_SecureHash", "BADSIG".equals(txnRef)
+                ? signer.sign(responseHashData + "|tampered") : signer.sign(responseHashData));
+
+        byte[] bytes = JSON.writeValueAsBytes(response);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    // Transaction giả: reconcilePage chỉ cần callback được chạy
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.sellingcourese;
+
+import org.example.sellingcourese.Model.Account;
+import org.example.sellingcourese.Model.Course;
+import org.example.sellingcourese.Model.Role;
+import org.example.sellingcourese.Model.User;
+import org.example.sellingcourese.repository.AccountRepository;
+import org.example.sellingcourese.repository.CourseRepository;
+import org.example.sellingcourese.repository.RoleRepository;
+import org.example.sellingcourese.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestComponent;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+// Tạo dữ liệu tối thiểu (Role -> Account -> User -> Course) cho integration test
+@TestComponent
+public class TestFixtures {
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CourseRepository courseRepository;
+
+    public User createUser() {
+        Role role = new Role();
+        role.setName("USER");
+        role = roleRepository.save(role);
+
+        Account account = new Account();
+        account.setUserName("user-" + UUID.randomUUID());
+        account.setPassWord("secret");
+        account.setRoleId(role.getId());
+        account = accountRepository.save(account);
+
+        User user = new User();
+        user.setDisplayName("Test user");
+        user.setAccountID(account.getAccountID());
+        return userRepository.save(user);
+    }
+
+    public Course createCourse(Long teacherId, BigDecimal price) {
+        Course course = new Course();
+        course.setTitle("Course " + UUID.randomUUID());
+        course.setDescription("Test course");
+        course.setPrice(price);
+        course.setTeacherId(teacherId);
+        course.setStatus(0);
+        return courseRepository.save(course);
+    }
+}